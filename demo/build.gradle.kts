@@ -27,9 +27,15 @@ dependencies {
 	implementation("org.springframework.boot:spring-boot-starter-security")
 	implementation("org.slf4j:slf4j-simple:1.7.36")
 	implementation("com.h2database:h2")
-	runtimeOnly("org.postgresql:postgresql")
+	// Used directly for COPY in the bulk trip import
+	implementation("org.postgresql:postgresql")
 
 	implementation("com.google.maps:google-maps-services:2.2.0")
+	// Used directly to configure the Maps client connection pool
+	implementation("com.squareup.okhttp3:okhttp:4.12.0")
+	implementation("com.github.ben-manes.caffeine:caffeine")
+	// Directions fixtures for the offline replay provider
+	implementation("com.google.code.gson:gson")
 
 	testImplementation("org.springframework.boot:spring-boot-starter-test")
 	testRuntimeOnly("org.junit.platform:junit-platform-launcher")
@@ -37,4 +43,10 @@ dependencies {
 
 tasks.withType<Test> {
 	useJUnitPlatform()
+	// Opt in to the benchmarks with -Dbenchmark=true
+	System.getProperty("benchmark")?.let { systemProperty("benchmark", it) }
+	// Run the Postgres tests with -Dpostgres.url=jdbc:postgresql://...
+	listOf("postgres.url", "postgres.username", "postgres.password").forEach { name ->
+		System.getProperty(name)?.let { systemProperty(name, it) }
+	}
 }
@@ -0,0 +1,63 @@
+package com.example.demo.config;
+
+import jakarta.annotation.PostConstruct;
+import java.sql.Connection;
+import java.util.Map;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the id sequences past ids that are already taken.
+ *
+ * These tables used identity columns before their ids came from sequences,
+ * so on an existing PostgreSQL database the new sequences start below the
+ * highest id. Runs after the schema update and before the server accepts
+ * requests.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class IdSequenceAligner {
+
+    private record IdColumn(String table, String column) {
+    }
+
+    // Id column to the sequence its ids are drawn from
+    private static final Map<IdColumn, String> SEQUENCES = Map.of(
+            new IdColumn("trips", "id"), "trips_seq",
+            new IdColumn("users", "id"), "users_seq",
+            new IdColumn("vehicles", "id"), "vehicles_seq",
+            new IdColumn("challenge_status", "challenge_status_id"), "challenge_status_seq",
+            new IdColumn("cosmetics", "id"), "cosmetics_seq",
+            new IdColumn("pending_trips", "id"), "pending_trips_seq");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public IdSequenceAligner(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    void align() {
+        String database = jdbcTemplate.execute(
+                (Connection connection) -> connection.getMetaData().getDatabaseProductName());
+        if (!"PostgreSQL".equals(database)) {
+            // H2 databases are created empty
+            return;
+        }
+        SEQUENCES.forEach((id, sequence) -> {
+            // The pooled optimizer hands out the 50 ids up to each sequence
+            // value, so the next value must be a full block past the
+            // highest id
+            Long moved = jdbcTemplate.queryForObject(
+                    "SELECT CASE WHEN max_id > 0 AND max_id >= last_value - 49"
+                            + " THEN setval('" + sequence + "', max_id + 49) END"
+                            + " FROM (SELECT COALESCE(MAX(" + id.column() + "), 0) AS max_id"
+                            + " FROM " + id.table() + ") t, " + sequence,
+                    Long.class);
+            if (moved != null) {
+                System.out.println("Moved " + sequence + " to " + moved);
+            }
+        });
+    }
+}
@@ -1,9 +1,19 @@
 package com.example.demo.controller;
 
-import com.example.demo.repository.TripRepository;
-import com.example.demo.repository.UserRepository;
+import com.example.demo.model.TransportationMode;
+import com.example.demo.service.DailyTripRollup;
+import com.example.demo.service.DataVersions;
+import com.example.demo.service.DirectionsCache;
+import com.example.demo.service.EmissionFactorEngine;
+import com.example.demo.service.GlobalStatisticsCounters;
+import com.example.demo.service.MapsApiClient;
+import java.util.List;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -11,16 +21,27 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/admin")
 public class AdminController {
 
-    // TODO: only use services
-    private final UserRepository userRepository;
-    private final TripRepository tripRepository;
+    private final MapsApiClient mapsApiClient;
+    private final DirectionsCache directionsCache;
+    private final EmissionFactorEngine emissionFactorEngine;
+    private final DailyTripRollup dailyTripRollup;
+    private final DataVersions dataVersions;
+    private final GlobalStatisticsCounters globalStatistics;
 
     public AdminController(
-        UserRepository userRepository,
-        TripRepository tripRepository
+        MapsApiClient mapsApiClient,
+        DirectionsCache directionsCache,
+        EmissionFactorEngine emissionFactorEngine,
+        DailyTripRollup dailyTripRollup,
+        DataVersions dataVersions,
+        GlobalStatisticsCounters globalStatistics
     ) {
-        this.userRepository = userRepository;
-        this.tripRepository = tripRepository;
+        this.mapsApiClient = mapsApiClient;
+        this.directionsCache = directionsCache;
+        this.emissionFactorEngine = emissionFactorEngine;
+        this.dailyTripRollup = dailyTripRollup;
+        this.dataVersions = dataVersions;
+        this.globalStatistics = globalStatistics;
     }
 
     public record Statistics(
@@ -33,15 +54,70 @@ public class AdminController {
     @GetMapping("/statistics")
     public ResponseEntity<Statistics> getStatistics() {
         // TODO: validate user is admin
-        var totalTripDistance = tripRepository.sumTotalDistanceKm();
-        var totalEmissionsCO2eKg = tripRepository.sumTotalEmissionsCO2eKg();
+        var totals = globalStatistics.totals();
         return ResponseEntity.ok(
             new Statistics(
-                userRepository.count(),
-                tripRepository.count(),
-                totalTripDistance,
-                totalEmissionsCO2eKg
+                totals.users(),
+                totals.trips(),
+                totals.distanceKm(),
+                totals.emissionsCO2eKg()
             )
         );
     }
+
+    @GetMapping("/maps/pool")
+    public ResponseEntity<MapsApiClient.PoolStats> getMapsPoolStats() {
+        // TODO: validate user is admin
+        return ResponseEntity.ok(mapsApiClient.poolStats());
+    }
+
+    @GetMapping("/directions/cache")
+    public ResponseEntity<DirectionsCache.Stats> getDirectionsCacheStats() {
+        // TODO: validate user is admin
+        return ResponseEntity.ok(directionsCache.stats());
+    }
+
+    @GetMapping("/emission-factors")
+    public ResponseEntity<List<TransportationMode>> getEmissionFactors() {
+        // TODO: validate user is admin
+        return ResponseEntity.ok(emissionFactorEngine.getFactors());
+    }
+
+    public record EmissionFactorUpdate(double co2PerKilometer) {}
+
+    /**
+     * Sets the factor, in grams of CO2e per kilometer, for a travel mode
+     * ("driving") or transit vehicle type ("transit:bus").
+     */
+    @PutMapping("/emission-factors/{name}")
+    public ResponseEntity<TransportationMode> setEmissionFactor(
+        @PathVariable String name,
+        @RequestBody EmissionFactorUpdate update
+    ) {
+        // TODO: validate user is admin
+        return ResponseEntity.ok(
+            emissionFactorEngine.setFactor(name, update.co2PerKilometer())
+        );
+    }
+
+    @PostMapping("/emission-factors/reload")
+    public ResponseEntity<Void> reloadEmissionFactors() {
+        // TODO: validate user is admin
+        emissionFactorEngine.reload();
+        return ResponseEntity.ok().build();
+    }
+
+    public record BackfillResult(int rows) {}
+
+    /**
+     * Rebuilds the daily per-user trip totals from the trips table.
+     */
+    @PostMapping("/rollup/backfill")
+    public ResponseEntity<BackfillResult> backfillRollup() {
+        // TODO: validate user is admin
+        int rows = dailyTripRollup.backfill();
+        // Statistics read from the rollup may have changed for anyone
+        dataVersions.invalidateAll();
+        return ResponseEntity.ok(new BackfillResult(rows));
+    }
 }
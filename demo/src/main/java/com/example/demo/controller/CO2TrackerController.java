@@ -1,21 +1,32 @@
 package com.example.demo.controller;
 
 import com.example.demo.model.Trip;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import com.example.demo.service.TripService.EmissionsTimeSeries;
+import com.example.demo.service.TripService.TimeBucket;
+import com.example.demo.service.TripService.TripPage;
 import com.example.demo.service.TripServiceImpl;
 
 import org.springframework.web.bind.annotation.DeleteMapping;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
 
 
 @RestController
 @RequestMapping("/users")
 public class CO2TrackerController {
 
+    private static final int DEFAULT_TIMESERIES_POINTS = 365;
+    private static final int MAX_TIMESERIES_POINTS = 1000;
+    private static final int MAX_TRIPS_PAGE_SIZE = 500;
+
     private final TripServiceImpl tripService;
 
     public CO2TrackerController(TripServiceImpl tripService) {
@@ -51,4 +62,53 @@ public class CO2TrackerController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
     }
+
+    /**
+     * A page of the user's trips, newest first. Used instead of the full
+     * list when a limit is given; pass nextCursor back to get the next page.
+     */
+    @GetMapping(value = "/{id}/trips", params = "limit")
+    public ResponseEntity<TripPage> getUserTripsPage(
+            @PathVariable long id,
+            @RequestParam int limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String mode,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        if (limit < 1 || limit > MAX_TRIPS_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok().body(tripService.getTripsPage(id, limit, cursor, mode, from, to));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+    }
+
+    /**
+     * Emission sums per day, week or month, in a columnar layout so that a
+     * chart does not have to download and aggregate every trip.
+     */
+    @GetMapping("/{id}/emissions/timeseries")
+    public ResponseEntity<EmissionsTimeSeries> getUserEmissionsTimeSeries(
+            @PathVariable long id,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "day") String bucket,
+            @RequestParam(required = false) Integer maxPoints) {
+        try {
+            int points = maxPoints == null
+                    ? DEFAULT_TIMESERIES_POINTS
+                    : Math.min(maxPoints, MAX_TIMESERIES_POINTS);
+            TimeBucket timeBucket = TimeBucket.valueOf(bucket.toUpperCase(Locale.ROOT));
+            return ResponseEntity.ok().body(
+                    tripService.getEmissionsTimeSeries(id, from, to, timeBucket, points));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+    }
 }
@@ -4,11 +4,19 @@ import com.example.demo.model.Vehicle;
 import com.example.demo.model.VehicleType;
 import com.example.demo.service.TransportService;
 import com.example.demo.service.TransportService.Statistics;
+import com.example.demo.service.TransportService.TripEstimate;
 import com.example.demo.service.TransportService.TripEstimateResults;
 import com.example.demo.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.websocket.server.PathParam;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import org.springframework.data.repository.query.Param;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -21,6 +29,9 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/transport")
@@ -28,13 +39,18 @@ public class TransportController {
 
     private final UserService userService;
     private final TransportService transportService;
+    private final ObjectMapper objectMapper;
+
+    private static final long ESTIMATE_STREAM_TIMEOUT_MS = 30_000;
 
     public TransportController(
         UserService userService,
-        TransportService transportService
+        TransportService transportService,
+        ObjectMapper objectMapper
     ) {
         this.userService = userService;
         this.transportService = transportService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping(
@@ -43,10 +59,39 @@ public class TransportController {
     )
     public ResponseEntity<TransportService.Leaderboard> getLeaderboard(
         @Param("metric") TransportService.LeaderboardMetric metric,
-        @Param("period") TransportService.LeaderboardPeriod period
+        @Param("period") TransportService.LeaderboardPeriod period,
+        @RequestParam(value = "limit", required = false) Integer limit,
+        @RequestParam(value = "cursor", required = false) String cursor,
+        WebRequest request
+    ) {
+        // Answer polls for unchanged leaderboards with a 304 up front
+        if (request.checkNotModified(transportService.getLeaderboardETag(period))) {
+            return null;
+        }
+        var leaderboard = transportService.getLeaderboard(
+            metric,
+            period,
+            limit,
+            cursor
+        );
+        return ResponseEntity.ok().eTag(leaderboard.eTag()).body(leaderboard);
+    }
+
+    @GetMapping(
+        value = "/leaderboard/rank",
+        produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<TransportService.LeaderboardRank> getLeaderboardRank(
+        @RequestParam("userId") long userId,
+        @Param("metric") TransportService.LeaderboardMetric metric,
+        @Param("period") TransportService.LeaderboardPeriod period,
+        @RequestParam(value = "neighbours", required = false) Integer neighbours
     ) {
-        var leaderboard = transportService.getLeaderboard(metric, period);
-        return ResponseEntity.ok().body(leaderboard);
+        var user = userService.getUser(userId);
+        return transportService
+            .getLeaderboardRank(user, metric, period, neighbours)
+            .map(rank -> ResponseEntity.ok().body(rank))
+            .orElse(ResponseEntity.notFound().build());
     }
 
     @GetMapping("/addresses")
@@ -66,11 +111,15 @@ public class TransportController {
         produces = MediaType.APPLICATION_JSON_VALUE
     )
     public ResponseEntity<Statistics> getStatistics(
-        @PathParam(value = "userId") Long userId
+        @PathParam(value = "userId") Long userId,
+        WebRequest request
     ) {
-        var user = userService.getUser(userId);
-        var statistics = transportService.getStatistics(user);
-        return ResponseEntity.ok().body(statistics);
+        String eTag = transportService.getStatisticsETag(userId);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        var statistics = transportService.getStatistics(userId);
+        return ResponseEntity.ok().eTag(eTag).body(statistics);
     }
 
     @GetMapping(
@@ -89,6 +138,119 @@ public class TransportController {
         return ResponseEntity.ok().body(results);
     }
 
+    public record ModeEstimate(String mode, TripEstimate estimate) {}
+
+    public record ModeError(String mode, String message) {}
+
+    /**
+     * Streams each mode's estimate as soon as it is computed, followed by a
+     * final "summary" event with all alternatives.
+     */
+    @GetMapping(
+        value = "/tripestimate/stream",
+        produces = MediaType.TEXT_EVENT_STREAM_VALUE
+    )
+    public SseEmitter streamAlternatives(
+        @PathParam("origin") String origin,
+        @PathParam("destination") String destination
+    ) {
+        SseEmitter emitter = new SseEmitter(ESTIMATE_STREAM_TIMEOUT_MS);
+        Map<String, CompletableFuture<TripEstimate>> pending =
+            transportService.estimateModes(origin, destination, null);
+
+        List<CompletableFuture<?>> sent = new ArrayList<>();
+        for (Map.Entry<String, CompletableFuture<TripEstimate>> entry : pending.entrySet()) {
+            String mode = entry.getKey();
+            sent.add(
+                entry
+                    .getValue()
+                    .handle((estimate, error) -> {
+                        if (error != null) {
+                            Throwable cause = error.getCause() != null ? error.getCause() : error;
+                            send(emitter, "error", new ModeError(mode, cause.toString()));
+                        } else if (estimate != null) {
+                            send(emitter, "estimate", new ModeEstimate(mode, estimate));
+                        }
+                        return null;
+                    })
+            );
+        }
+
+        // Chained on the sends, so the summary is always the last event
+        CompletableFuture.allOf(sent.toArray(new CompletableFuture<?>[0]))
+            .thenRun(() -> {
+                try {
+                    send(emitter, "summary", transportService.collectTripEstimate(pending));
+                    emitter.complete();
+                } catch (RuntimeException e) {
+                    emitter.completeWithError(e);
+                }
+            });
+        return emitter;
+    }
+
+    private static void send(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException | IllegalStateException e) {
+            // The client went away; the remaining estimates are dropped
+        }
+    }
+
+    public record BatchTripEstimateRequest(
+        List<TransportService.TripPair> pairs,
+        String vehicleId
+    ) {}
+
+    /**
+     * Estimates many origin/destination pairs in one request. Results are
+     * streamed back as newline delimited JSON, in completion order.
+     */
+    @PostMapping(
+        value = "/tripestimate/batch",
+        produces = MediaType.APPLICATION_NDJSON_VALUE
+    )
+    public ResponseEntity<StreamingResponseBody> batchAlternatives(
+        @RequestBody BatchTripEstimateRequest request
+    ) {
+        if (request.pairs == null || request.pairs.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        // Checked up front; once the body starts streaming the status is 200.
+        Vehicle vehicle;
+        try {
+            vehicle = transportService.prepareBatchTripEstimate(
+                request.pairs,
+                request.vehicleId
+            );
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = out -> {
+            Object lock = new Object();
+            transportService.batchTripEstimate(
+                request.pairs,
+                vehicle,
+                result -> {
+                    synchronized (lock) {
+                        try {
+                            out.write(objectMapper.writeValueAsBytes(result));
+                            out.write('\n');
+                            out.flush();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                }
+            );
+        };
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .body(body);
+    }
+
     @GetMapping(
         value = "/vehicles",
         produces = MediaType.APPLICATION_JSON_VALUE
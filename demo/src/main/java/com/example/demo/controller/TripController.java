@@ -1,21 +1,30 @@
 package com.example.demo.controller;
 
-import com.example.demo.model.Challenge;
-import com.example.demo.model.ChallengeStatus;
+import com.example.demo.model.PendingTrip;
 import com.example.demo.model.Trip;
+import com.example.demo.model.TripImport;
 import com.example.demo.model.User;
-import com.example.demo.model.Challenge.ChallengeType;
-import com.example.demo.model.ChallengeStatus.Status;
 import com.example.demo.service.ChallengeStatusService;
 import com.example.demo.service.TransportService;
+import com.example.demo.service.TripExporter;
+import com.example.demo.service.TripImporter;
+import com.example.demo.service.TripIngestQueue;
 import com.example.demo.service.TripServiceImpl;
 import com.example.demo.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.websocket.server.PathParam;
 
-import java.time.LocalDateTime;
-import java.util.List;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Locale;
+import java.util.NoSuchElementException;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
@@ -25,6 +34,9 @@ public class TripController {
     private final UserService userService;
     private final TransportService transportService;
     private final TripServiceImpl tripService;
+    private final TripIngestQueue tripIngestQueue;
+    private final TripImporter tripImporter;
+    private final TripExporter tripExporter;
 
     @Autowired
     private ChallengeStatusService challengeStatusService;
@@ -34,15 +46,46 @@ public class TripController {
     public TripController(
             UserService userService,
             TransportService transportService,
-            TripServiceImpl tripService) {
+            TripServiceImpl tripService,
+            TripIngestQueue tripIngestQueue,
+            TripImporter tripImporter,
+            TripExporter tripExporter) {
         this.userService = userService;
         this.transportService = transportService;
         this.tripService = tripService;
+        this.tripIngestQueue = tripIngestQueue;
+        this.tripImporter = tripImporter;
+        this.tripExporter = tripExporter;
     }
 
+    // Streamed, so the trips are never all in memory at once
     @GetMapping("")
-    public List<Trip> getAllTrips() {
-        return tripService.getAllTrips();
+    public ResponseEntity<StreamingResponseBody> getAllTrips() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> tripExporter.export(TripExporter.Format.JSON, out));
+    }
+
+    /**
+     * Exports all trips as NDJSON or as CSV in the import format.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportTrips(
+            @RequestParam(defaultValue = "ndjson") String format) {
+        TripExporter.Format exportFormat;
+        try {
+            exportFormat = TripExporter.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown format " + format);
+        }
+        return ResponseEntity.ok()
+                .contentType(switch (exportFormat) {
+                    case JSON -> MediaType.APPLICATION_JSON;
+                    case NDJSON -> MediaType.APPLICATION_NDJSON;
+                    case CSV -> MediaType.parseMediaType("text/csv");
+                })
+                .header("Content-Disposition", "attachment; filename=\"trips." + format.toLowerCase(Locale.ROOT) + "\"")
+                .body(out -> tripExporter.export(exportFormat, out));
     }
 
     @GetMapping("/{tripid}")
@@ -84,39 +127,67 @@ public class TripController {
                 trip.mode,
                 trip.vehicleId);
 
-        List<ChallengeStatus> statuses = challengeStatusService.getAllUserChallenges(user.getId());
-
-        for (ChallengeStatus status : statuses) {
-            if (status.getStatus() == Status.COMPLETED) {
-                continue;
-            }
-            Challenge challenge = status.getChallenge();
-
-            // Start challenege if not started
-            if (status.getStatus() == Status.NOT_STARTED) {
-                status.setStatus(Status.IN_PROGRESS);
-            }
-
-            // Check if challenge is completed
-
-            if (status.getChallenge().getChallengeType() == ChallengeType.METRIC) {
-                status.setCurrentValue(status.getCurrentValue() + newTrip.getSavedEmissionsCO2eKg());
-            } else if (status.getChallenge().getChallengeType() == ChallengeType.ACTION) {
-                status.setCurrentValue(status.getCurrentValue() + 1);
-
-            }
-            if (status.getCurrentValue() >= challenge.getTargetValue()) {
-                status.setCurrentValue(challenge.getTargetValue());
-                status.setStatus(Status.COMPLETED);
-                status.setCompletedAt(LocalDateTime.now());
+        challengeStatusService.recordTrip(user, newTrip);
+        return "{\"status\": \"success\"}";
+    }
 
-                user.setPoints(user.getPoints() + challenge.getRewardPoints());
-                userService.updateUser(user, userId);
-            }
+    /**
+     * Queues a trip and answers right away. The trip is estimated and saved
+     * in the background; poll the returned location for the result.
+     */
+    @PostMapping("/pending")
+    public ResponseEntity<PendingTrip> submitTrip(
+            @RequestParam Long userId,
+            @RequestBody AddTripRequest trip) {
+        try {
+            PendingTrip pending = tripIngestQueue.submit(
+                    userId,
+                    trip.origin,
+                    trip.destination,
+                    trip.mode,
+                    trip.vehicleId);
+            return ResponseEntity
+                    .accepted()
+                    .location(URI.create("/trips/pending/" + pending.getId()))
+                    .body(pending);
+        } catch (NoSuchElementException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
 
-            challengeStatusService.updateChallenge(status.getChallengeStatusId(), status);
+    @GetMapping("/pending/{id}")
+    public ResponseEntity<PendingTrip> getPendingTrip(@PathVariable long id) {
+        return ResponseEntity.of(tripIngestQueue.getPendingTrip(id));
+    }
 
+    /**
+     * Imports trips with precomputed figures from a CSV or NDJSON body. To
+     * continue a failed import, send the same file with its id as resume.
+     */
+    @PostMapping(value = "/import", consumes = { "text/csv", "application/x-ndjson" })
+    public TripImport importTrips(
+            @RequestParam(required = false) Long resume,
+            HttpServletRequest request) throws IOException {
+        TripImporter.Format format = MediaType.parseMediaType(request.getContentType())
+                .isCompatibleWith(MediaType.parseMediaType("text/csv"))
+                        ? TripImporter.Format.CSV
+                        : TripImporter.Format.NDJSON;
+        if (request.getCharacterEncoding() == null) {
+            request.setCharacterEncoding("UTF-8");
         }
-        return "{\"status\": \"success\"}";
+        try {
+            return tripImporter.importTrips(request.getReader(), format, resume);
+        } catch (NoSuchElementException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    @GetMapping("/import/{id}")
+    public ResponseEntity<TripImport> getTripImport(@PathVariable long id) {
+        return ResponseEntity.of(tripImporter.getImport(id));
     }
 }
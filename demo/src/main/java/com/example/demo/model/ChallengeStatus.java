@@ -10,7 +10,8 @@ import java.util.List;
 public class ChallengeStatus {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "challenge_status_seq")
+    @SequenceGenerator(name = "challenge_status_seq", sequenceName = "challenge_status_seq", allocationSize = 50)
     private long challengeStatusId;
 
     private long userID;
@@ -11,7 +11,8 @@ import java.util.Set;
 public class Cosmetics {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cosmetics_seq")
+    @SequenceGenerator(name = "cosmetics_seq", sequenceName = "cosmetics_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, unique = true)
@@ -0,0 +1,62 @@
+package com.example.demo.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * Checkpoint of the global totals shown on the admin dashboard. There is
+ * only ever one row, with id 1.
+ */
+@Entity
+@Table(name = "global_statistics")
+public class GlobalStatistics {
+
+    public static final long ID = 1;
+
+    @Id
+    private long id = ID;
+
+    private long users;
+    private long trips;
+    private double distanceKm;
+    private double emissionsCO2eKg;
+    private LocalDateTime checkpointedAt;
+
+    public GlobalStatistics() {}
+
+    public GlobalStatistics(
+        long users,
+        long trips,
+        double distanceKm,
+        double emissionsCO2eKg,
+        LocalDateTime checkpointedAt
+    ) {
+        this.users = users;
+        this.trips = trips;
+        this.distanceKm = distanceKm;
+        this.emissionsCO2eKg = emissionsCO2eKg;
+        this.checkpointedAt = checkpointedAt;
+    }
+
+    public long getUsers() {
+        return users;
+    }
+
+    public long getTrips() {
+        return trips;
+    }
+
+    public double getDistanceKm() {
+        return distanceKm;
+    }
+
+    public double getEmissionsCO2eKg() {
+        return emissionsCO2eKg;
+    }
+
+    public LocalDateTime getCheckpointedAt() {
+        return checkpointedAt;
+    }
+}
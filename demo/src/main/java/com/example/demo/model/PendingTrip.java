@@ -0,0 +1,148 @@
+package com.example.demo.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * A trip submitted for asynchronous registration. Rows are claimed by the
+ * ingest workers, which estimate the trip and save it, and are kept so the
+ * submitter can poll for the result.
+ *
+ * A claim is a lease: it records who claimed the row and when, and only the
+ * holder of the claim can settle the row. A failed attempt that may succeed
+ * later puts the row back in the queue until its next attempt is due.
+ */
+@Entity
+@Table(
+    name = "pending_trips",
+    indexes = @Index(columnList = "status, id")
+)
+public class PendingTrip {
+
+    public enum Status {
+        PENDING,
+        PROCESSING,
+        COMPLETED,
+        FAILED,
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "pending_trips_seq")
+    @SequenceGenerator(name = "pending_trips_seq", sequenceName = "pending_trips_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private long userId;
+
+    private String origin;
+    private String destination;
+    private String mode;
+    private Long vehicleId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status;
+
+    // Set once the trip has been saved
+    private Long tripId;
+    // The error of the last failed attempt
+    private String error;
+
+    @JsonIgnore
+    private String claimedBy;
+    @JsonIgnore
+    private LocalDateTime claimedAt;
+    private int attempts;
+    private LocalDateTime nextAttemptAt;
+
+    private LocalDateTime submittedAt;
+    private LocalDateTime completedAt;
+
+    public PendingTrip() {}
+
+    public PendingTrip(
+        long userId,
+        String origin,
+        String destination,
+        String mode,
+        Long vehicleId
+    ) {
+        this.userId = userId;
+        this.origin = origin;
+        this.destination = destination;
+        this.mode = mode;
+        this.vehicleId = vehicleId;
+        this.status = Status.PENDING;
+        this.submittedAt = LocalDateTime.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public Long getVehicleId() {
+        return vehicleId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Long getTripId() {
+        return tripId;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public String getClaimedBy() {
+        return claimedBy;
+    }
+
+    public LocalDateTime getClaimedAt() {
+        return claimedAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public LocalDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public LocalDateTime getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.demo.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import java.time.LocalDateTime;
+
+/**
+ * Persisted estimate for the best route between two addresses for one travel
+ * mode. Only the figures needed for a trip estimate are stored, not the full
+ * directions response. Emissions are tagged with the emission factor
+ * generation they were computed with.
+ */
+@Entity
+@Table(
+    name = "route_estimates",
+    uniqueConstraints = @UniqueConstraint(
+        columnNames = { "origin", "destination", "travel_mode" }
+    ),
+    indexes = @Index(columnList = "expires_at")
+)
+public class RouteEstimate {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String origin;
+
+    @Column(nullable = false)
+    private String destination;
+
+    @Column(name = "travel_mode", nullable = false)
+    private String travelMode;
+
+    private double distanceKm;
+    private long durationSeconds;
+    private double emissionsCO2eKg;
+
+    @Column(name = "factor_generation")
+    private Long factorGeneration;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    public RouteEstimate() {}
+
+    public RouteEstimate(
+        String origin,
+        String destination,
+        String travelMode,
+        double distanceKm,
+        long durationSeconds,
+        double emissionsCO2eKg,
+        long factorGeneration,
+        LocalDateTime expiresAt
+    ) {
+        this.origin = origin;
+        this.destination = destination;
+        this.travelMode = travelMode;
+        this.distanceKm = distanceKm;
+        this.durationSeconds = durationSeconds;
+        this.emissionsCO2eKg = emissionsCO2eKg;
+        this.factorGeneration = factorGeneration;
+        this.expiresAt = expiresAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public String getTravelMode() {
+        return travelMode;
+    }
+
+    public double getDistanceKm() {
+        return distanceKm;
+    }
+
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public double getEmissionsCO2eKg() {
+        return emissionsCO2eKg;
+    }
+
+    public Long getFactorGeneration() {
+        return factorGeneration;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setDistanceKm(double distanceKm) {
+        this.distanceKm = distanceKm;
+    }
+
+    public void setDurationSeconds(long durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+
+    public void setEmissionsCO2eKg(double emissionsCO2eKg) {
+        this.emissionsCO2eKg = emissionsCO2eKg;
+    }
+
+    public void setFactorGeneration(Long factorGeneration) {
+        this.factorGeneration = factorGeneration;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
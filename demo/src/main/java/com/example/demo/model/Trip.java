@@ -7,17 +7,24 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.PrePersist;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "trips")
+@Table(
+    name = "trips",
+    // Keyset pages of a user's trips, newest first
+    indexes = @Index(columnList = "user_id, created_at, id")
+)
 public class Trip {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "trips_seq")
+    @SequenceGenerator(name = "trips_seq", sequenceName = "trips_seq", allocationSize = 50)
     private long id;
 
     @ManyToOne
@@ -81,7 +88,10 @@ public class Trip {
 
     @PrePersist
     protected void onCreate() {
-        createdAt = LocalDateTime.now();
+        // Imported trips keep their original time
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
     }
 
     public LocalDateTime getCreatedAt() {
@@ -136,6 +146,10 @@ public class Trip {
         return this.moneySaved;
     }
 
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
     public void setUser(User user) {
         this.user = user;
     }
@@ -0,0 +1,121 @@
+package com.example.demo.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * Progress of a bulk trip import. The counters are updated in the same
+ * transaction as each chunk of trips, so rowsRead is exactly the number of
+ * data rows to skip when the import is resumed.
+ */
+@Entity
+@Table(name = "trip_imports")
+public class TripImport {
+
+    public enum Status {
+        RUNNING,
+        COMPLETED,
+        FAILED,
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String format;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status;
+
+    private long rowsRead;
+    private long rowsImported;
+    private long rowsRejected;
+    // The last rejected row or the failure
+    private String lastError;
+
+    private LocalDateTime startedAt;
+    private LocalDateTime updatedAt;
+
+    public TripImport() {}
+
+    public TripImport(String format) {
+        this.format = format;
+        this.status = Status.RUNNING;
+        this.startedAt = LocalDateTime.now();
+        this.updatedAt = this.startedAt;
+    }
+
+    /**
+     * Counts a committed chunk.
+     */
+    public void advance(long read, long imported, long rejected, String lastError) {
+        this.rowsRead += read;
+        this.rowsImported += imported;
+        this.rowsRejected += rejected;
+        if (lastError != null) {
+            this.lastError = lastError;
+        }
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public void resume() {
+        this.status = Status.RUNNING;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public void complete() {
+        this.status = Status.COMPLETED;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public void fail(String error) {
+        this.status = Status.FAILED;
+        this.lastError = error;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public long getRowsImported() {
+        return rowsImported;
+    }
+
+    public long getRowsRejected() {
+        return rowsRejected;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.demo.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import java.time.LocalDate;
+
+/**
+ * Trip totals for one user on one day. Period leaderboards and statistics
+ * sum these rows instead of scanning the trips themselves.
+ */
+@Entity
+@Table(
+    name = "user_daily_trip_stats",
+    uniqueConstraints = @UniqueConstraint(
+        columnNames = { "user_id", "trip_day" }
+    ),
+    indexes = @Index(columnList = "trip_day")
+)
+public class UserDailyTripStats {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private long userId;
+
+    // "day" is a reserved word in H2
+    @Column(name = "trip_day", nullable = false)
+    private LocalDate day;
+
+    private long trips;
+    private double distanceKm;
+    private double durationSeconds;
+    private double emissionsCO2eKg;
+    private double savedEmissionsCO2eKg;
+    // Sum and count of per-trip emissions per kilometer, for trips with a
+    // distance, so the average can be combined across days
+    private double emissionsPerKmSum;
+    private long emissionsPerKmCount;
+
+    public UserDailyTripStats() {}
+
+    public UserDailyTripStats(long userId, LocalDate day) {
+        this.userId = userId;
+        this.day = day;
+    }
+
+    /**
+     * Adds (sign 1) or subtracts (sign -1) one trip's figures.
+     */
+    public void add(
+        double distanceKm,
+        double durationSeconds,
+        double emissionsCO2eKg,
+        double savedEmissionsCO2eKg,
+        int sign
+    ) {
+        this.trips += sign;
+        this.distanceKm += sign * distanceKm;
+        this.durationSeconds += sign * durationSeconds;
+        this.emissionsCO2eKg += sign * emissionsCO2eKg;
+        this.savedEmissionsCO2eKg += sign * savedEmissionsCO2eKg;
+        if (distanceKm > 0) {
+            this.emissionsPerKmSum += sign * emissionsCO2eKg / distanceKm;
+            this.emissionsPerKmCount += sign;
+        }
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public long getTrips() {
+        return trips;
+    }
+
+    public double getDistanceKm() {
+        return distanceKm;
+    }
+
+    public double getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public double getEmissionsCO2eKg() {
+        return emissionsCO2eKg;
+    }
+
+    public double getSavedEmissionsCO2eKg() {
+        return savedEmissionsCO2eKg;
+    }
+
+    public double getEmissionsPerKmSum() {
+        return emissionsPerKmSum;
+    }
+
+    public long getEmissionsPerKmCount() {
+        return emissionsPerKmCount;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.demo.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * Running trip totals for one user, kept up to date on every trip write so
+ * statistics are a primary key read instead of an aggregate over all trips.
+ */
+@Entity
+@Table(name = "user_statistics")
+public class UserStatistics {
+
+    @Id
+    @Column(name = "user_id")
+    private long userId;
+
+    private long trips;
+    private double distanceKm;
+    private double durationSeconds;
+    private double emissionsCO2eKg;
+    private double savedEmissionsCO2eKg;
+
+    public UserStatistics() {}
+
+    public UserStatistics(long userId) {
+        this.userId = userId;
+    }
+
+    public UserStatistics(
+        long userId,
+        long trips,
+        double distanceKm,
+        double durationSeconds,
+        double emissionsCO2eKg,
+        double savedEmissionsCO2eKg
+    ) {
+        this.userId = userId;
+        this.trips = trips;
+        this.distanceKm = distanceKm;
+        this.durationSeconds = durationSeconds;
+        this.emissionsCO2eKg = emissionsCO2eKg;
+        this.savedEmissionsCO2eKg = savedEmissionsCO2eKg;
+    }
+
+    /**
+     * Adds (sign 1) or subtracts (sign -1) one trip's figures.
+     */
+    public void add(
+        double distanceKm,
+        double durationSeconds,
+        double emissionsCO2eKg,
+        double savedEmissionsCO2eKg,
+        int sign
+    ) {
+        this.trips += sign;
+        this.distanceKm += sign * distanceKm;
+        this.durationSeconds += sign * durationSeconds;
+        this.emissionsCO2eKg += sign * emissionsCO2eKg;
+        this.savedEmissionsCO2eKg += sign * savedEmissionsCO2eKg;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public long getTrips() {
+        return trips;
+    }
+
+    public double getDistanceKm() {
+        return distanceKm;
+    }
+
+    public double getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public double getEmissionsCO2eKg() {
+        return emissionsCO2eKg;
+    }
+
+    public double getSavedEmissionsCO2eKg() {
+        return savedEmissionsCO2eKg;
+    }
+}
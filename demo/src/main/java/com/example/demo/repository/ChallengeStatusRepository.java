@@ -1,10 +1,14 @@
 package com.example.demo.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import com.example.demo.model.Challenge.ChallengeType;
 import com.example.demo.model.ChallengeStatus;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -14,4 +18,59 @@ public interface ChallengeStatusRepository extends JpaRepository<ChallengeStatus
     List<ChallengeStatus> findByUserIDAndStatus(long userID, ChallengeStatus.Status status);
 
     ChallengeStatus findByUserIDAndChallenge_ChallengeID(long userID, long challengeID);
+
+    /**
+     * Adds the reward points of the user's unfinished challenges that a trip
+     * will complete. Must run before {@link #addProgress} for the same trip.
+     *
+     * @param savedEmissions the trip's progress on metric challenges; action
+     *                       challenges progress by one
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            UPDATE User u
+            SET u.points = u.points + CAST(COALESCE((
+                SELECT SUM(c.rewardPoints)
+                FROM ChallengeStatus s JOIN s.challenge c
+                WHERE s.userID = u.id
+                AND s.status <> com.example.demo.model.ChallengeStatus.Status.COMPLETED
+                AND s.currentValue
+                    + CASE WHEN c.challengeType = com.example.demo.model.Challenge.ChallengeType.METRIC
+                        THEN :savedEmissions ELSE 1 END
+                    >= c.targetValue
+            ), 0) AS Integer)
+            WHERE u.id = :userId
+            """)
+    int awardCompletedRewards(long userId, double savedEmissions);
+
+    /**
+     * Adds progress to all of the user's unfinished challenges of one type,
+     * starting those not started and completing those that reach their
+     * target, with the value capped at the target.
+     *
+     * @return the number of challenges updated
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            UPDATE ChallengeStatus s
+            SET s.currentValue = CASE
+                    WHEN s.currentValue + :amount >= (SELECT c.targetValue FROM Challenge c WHERE c = s.challenge)
+                    THEN (SELECT c.targetValue FROM Challenge c WHERE c = s.challenge)
+                    ELSE s.currentValue + :amount
+                END,
+                s.status = CASE
+                    WHEN s.currentValue + :amount >= (SELECT c.targetValue FROM Challenge c WHERE c = s.challenge)
+                    THEN com.example.demo.model.ChallengeStatus.Status.COMPLETED
+                    ELSE com.example.demo.model.ChallengeStatus.Status.IN_PROGRESS
+                END,
+                s.completedAt = CASE
+                    WHEN s.currentValue + :amount >= (SELECT c.targetValue FROM Challenge c WHERE c = s.challenge)
+                    THEN :now
+                    ELSE s.completedAt
+                END
+            WHERE s.userID = :userId
+            AND s.status <> com.example.demo.model.ChallengeStatus.Status.COMPLETED
+            AND s.challenge IN (SELECT c FROM Challenge c WHERE c.challengeType = :type)
+            """)
+    int addProgress(long userId, ChallengeType type, double amount, LocalDateTime now);
 }
@@ -0,0 +1,150 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.PendingTrip;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface PendingTripRepository
+    extends JpaRepository<PendingTrip, Long> {
+    /**
+     * Finds pending trips whose next attempt is due.
+     */
+    @Query(
+        """
+        SELECT p.id FROM PendingTrip p
+        WHERE p.status = com.example.demo.model.PendingTrip.Status.PENDING
+        AND (p.nextAttemptAt IS NULL OR p.nextAttemptAt <= :now)
+        ORDER BY p.id
+        """
+    )
+    List<Long> findReadyIds(@Param("now") LocalDateTime now, Limit limit);
+
+    /**
+     * Claims a pending trip, counting it as an attempt.
+     *
+     * @return 1 if the trip was claimed, 0 if another worker got it first
+     */
+    @Modifying
+    @Transactional
+    @Query(
+        """
+        UPDATE PendingTrip p
+        SET p.status = com.example.demo.model.PendingTrip.Status.PROCESSING,
+            p.claimedBy = :claim,
+            p.claimedAt = :now,
+            p.attempts = p.attempts + 1
+        WHERE p.id = :id
+        AND p.status = com.example.demo.model.PendingTrip.Status.PENDING
+        """
+    )
+    int claim(
+        @Param("id") long id,
+        @Param("claim") String claim,
+        @Param("now") LocalDateTime now
+    );
+
+    /**
+     * Marks a claimed trip as saved.
+     *
+     * @return 0 if the claim has been lost
+     */
+    @Modifying
+    @Transactional
+    @Query(
+        """
+        UPDATE PendingTrip p
+        SET p.status = com.example.demo.model.PendingTrip.Status.COMPLETED,
+            p.tripId = :tripId,
+            p.error = NULL,
+            p.completedAt = :now
+        WHERE p.id = :id
+        AND p.status = com.example.demo.model.PendingTrip.Status.PROCESSING
+        AND p.claimedBy = :claim
+        """
+    )
+    int complete(
+        @Param("id") long id,
+        @Param("claim") String claim,
+        @Param("tripId") long tripId,
+        @Param("now") LocalDateTime now
+    );
+
+    /**
+     * Marks a claimed trip as failed for good.
+     *
+     * @return 0 if the claim has been lost
+     */
+    @Modifying
+    @Transactional
+    @Query(
+        """
+        UPDATE PendingTrip p
+        SET p.status = com.example.demo.model.PendingTrip.Status.FAILED,
+            p.tripId = NULL,
+            p.error = :error,
+            p.completedAt = :now
+        WHERE p.id = :id
+        AND p.status = com.example.demo.model.PendingTrip.Status.PROCESSING
+        AND p.claimedBy = :claim
+        """
+    )
+    int fail(
+        @Param("id") long id,
+        @Param("claim") String claim,
+        @Param("error") String error,
+        @Param("now") LocalDateTime now
+    );
+
+    /**
+     * Returns a claimed trip to the queue after a failed attempt.
+     *
+     * @return 0 if the claim has been lost
+     */
+    @Modifying
+    @Transactional
+    @Query(
+        """
+        UPDATE PendingTrip p
+        SET p.status = com.example.demo.model.PendingTrip.Status.PENDING,
+            p.error = :error,
+            p.nextAttemptAt = :nextAttemptAt,
+            p.claimedBy = NULL,
+            p.claimedAt = NULL
+        WHERE p.id = :id
+        AND p.status = com.example.demo.model.PendingTrip.Status.PROCESSING
+        AND p.claimedBy = :claim
+        """
+    )
+    int retry(
+        @Param("id") long id,
+        @Param("claim") String claim,
+        @Param("error") String error,
+        @Param("nextAttemptAt") LocalDateTime nextAttemptAt
+    );
+
+    /**
+     * Returns trips whose claim is older than the lease to the queue, e.g.
+     * after their worker stopped.
+     */
+    @Modifying
+    @Transactional
+    @Query(
+        """
+        UPDATE PendingTrip p
+        SET p.status = com.example.demo.model.PendingTrip.Status.PENDING,
+            p.claimedBy = NULL,
+            p.claimedAt = NULL
+        WHERE p.status = com.example.demo.model.PendingTrip.Status.PROCESSING
+        AND (p.claimedAt IS NULL OR p.claimedAt < :claimedBefore)
+        """
+    )
+    int releaseExpired(@Param("claimedBefore") LocalDateTime claimedBefore);
+}
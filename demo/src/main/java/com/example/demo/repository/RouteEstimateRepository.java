@@ -0,0 +1,25 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.RouteEstimate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface RouteEstimateRepository
+    extends JpaRepository<RouteEstimate, Long> {
+    Optional<RouteEstimate> findByOriginAndDestinationAndTravelMode(
+        String origin,
+        String destination,
+        String travelMode
+    );
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM RouteEstimate r WHERE r.expiresAt < :now")
+    int deleteExpired(LocalDateTime now);
+}
@@ -7,5 +7,5 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface TransportationModeRepository
     extends JpaRepository<TransportationMode, Long> {
-    //TransportationMode findByTransportationMode(String transportationMode);
+    TransportationMode findByTransportationModeName(String transportationModeName);
 }
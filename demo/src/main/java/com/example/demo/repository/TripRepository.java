@@ -2,13 +2,20 @@ package com.example.demo.repository;
 
 import com.example.demo.model.Trip;
 import com.example.demo.model.User;
+import com.example.demo.model.VehicleType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface TripRepository extends JpaRepository<Trip, Long> {
@@ -20,15 +27,142 @@ public interface TripRepository extends JpaRepository<Trip, Long> {
 
     List<Trip> findAllTripsByUser(User user);
 
+    /**
+     * Gets a page of a user's trips, newest first, that come after a keyset
+     * cursor (createdAt, id) and fall in a time range.
+     */
+    @Query(
+        """
+        SELECT t FROM Trip t
+        WHERE t.user.id = :userId
+        AND t.createdAt >= :from
+        AND (t.createdAt < :beforeCreatedAt
+            OR (t.createdAt = :beforeCreatedAt AND t.id < :beforeId))
+        AND (:mode IS NULL OR t.travelMode = :mode)
+        ORDER BY t.createdAt DESC, t.id DESC
+        """
+    )
+    List<Trip> findPageByUser(
+        long userId,
+        LocalDateTime from,
+        LocalDateTime beforeCreatedAt,
+        long beforeId,
+        String mode,
+        Limit limit
+    );
+
+    /**
+     * A trip as it is exported. The user, vehicle owner and the owner's
+     * default vehicle are reduced to ids, so streaming trips never loads a
+     * User or its eager associations.
+     */
+    public record TripExportRow(
+        long id,
+        Long userId,
+        String origin,
+        String destination,
+        String travelMode,
+        Double totalDistanceKm,
+        Double totalDurationSeconds,
+        Double totalEmissionsCO2eKg,
+        Double savedEmissionsCO2eKg,
+        LocalDateTime createdAt,
+        Long vehicleId,
+        String vehicleMake,
+        String vehicleModel,
+        Integer vehicleYear,
+        VehicleType vehicleType,
+        Double vehicleEmissionsCO2ePerKm,
+        Long ownerDefaultVehicleId,
+        Long transportationModeId,
+        String transportationModeName,
+        Double transportationModeCo2PerKilometer,
+        Double totalMoneySaved
+    ) {}
+
+    /**
+     * Streams all trips in id order as export rows. The stream must be
+     * consumed inside a transaction.
+     */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+    })
+    @Query(
+        """
+        SELECT new com.example.demo.repository.TripRepository$TripExportRow(
+            t.id, u.id, t.origin, t.destination, t.travelMode,
+            t.totalDistanceKm, t.totalDurationSeconds,
+            t.totalEmissionsCO2eKg, t.savedEmissionsCO2eKg, t.createdAt,
+            v.id, v.make, v.model, v.year, v.type, v.emissionsCO2ePerKm, dv.id,
+            m.id, m.transportationModeName, m.co2PerKilometer,
+            t.moneySaved.totalMoneySaved
+        )
+        FROM Trip t
+        LEFT JOIN t.user u
+        LEFT JOIN t.vehicle v
+        LEFT JOIN v.owner o
+        LEFT JOIN o.defaultVehicle dv
+        LEFT JOIN t.transportationMode m
+        ORDER BY t.id
+        """
+    )
+    Stream<TripExportRow> streamAll();
+
+    public record AddressUsage(String address, long uses) {}
+
+    @Query("SELECT new com.example.demo.repository.TripRepository$AddressUsage(t.origin, COUNT(t)) FROM Trip t WHERE t.origin IS NOT NULL GROUP BY t.origin")
+    List<AddressUsage> getOriginUsage();
+
+    @Query("SELECT new com.example.demo.repository.TripRepository$AddressUsage(t.destination, COUNT(t)) FROM Trip t WHERE t.destination IS NOT NULL GROUP BY t.destination")
+    List<AddressUsage> getDestinationUsage();
+
+    public record TripFiguresRow(
+        long id,
+        Long userId,
+        LocalDateTime createdAt,
+        String travelMode,
+        Double totalDistanceKm,
+        Double totalDurationSeconds,
+        Double totalEmissionsCO2eKg,
+        Double savedEmissionsCO2eKg
+    ) {}
+
+    // Keyset page of trip figures in id order, without loading the entities
+    @Query("SELECT new com.example.demo.repository.TripRepository$TripFiguresRow(t.id, u.id, t.createdAt, t.travelMode, t.totalDistanceKm, t.totalDurationSeconds, t.totalEmissionsCO2eKg, t.savedEmissionsCO2eKg) FROM Trip t LEFT JOIN t.user u WHERE t.id > :afterId ORDER BY t.id")
+    List<TripFiguresRow> getTripFiguresAfter(long afterId, Limit limit);
+
+    public record TripTotalsRow(
+        long trips,
+        double distanceKm,
+        double durationSeconds,
+        double emissionsCO2eKg,
+        double savedEmissionsCO2eKg,
+        double emissionsPerKmSum,
+        long emissionsPerKmCount
+    ) {}
+
+    @Query(
+        "SELECT new com.example.demo.repository.TripRepository$TripTotalsRow(COUNT(t), " +
+        "COALESCE(SUM(t.totalDistanceKm), 0), " +
+        "COALESCE(SUM(t.totalDurationSeconds), 0), " +
+        "COALESCE(SUM(t.totalEmissionsCO2eKg), 0), " +
+        "COALESCE(SUM(t.savedEmissionsCO2eKg), 0), " +
+        "COALESCE(SUM(CASE WHEN t.totalDistanceKm > 0 THEN t.totalEmissionsCO2eKg / t.totalDistanceKm ELSE 0 END), 0), " +
+        "COALESCE(SUM(CASE WHEN t.totalDistanceKm > 0 THEN 1L ELSE 0L END), 0L)) " +
+        "FROM Trip t WHERE t.user.id = :userId"
+    )
+    TripTotalsRow getTripTotalsByUserId(long userId);
+
     @Modifying
     @Transactional
     @Query("DELETE FROM Trip t WHERE t.user = :user")
     void deleteUserTrip(User user);
 
-    @Query("SELECT SUM(t.totalDistanceKm) FROM Trip t")
+    @Query("SELECT COALESCE(SUM(t.totalDistanceKm), 0) FROM Trip t")
     double sumTotalDistanceKm();
 
-    @Query("SELECT SUM(t.totalEmissionsCO2eKg) FROM Trip t")
+    @Query("SELECT COALESCE(SUM(t.totalEmissionsCO2eKg), 0) FROM Trip t")
     double sumTotalEmissionsCO2eKg();
 
     @Query("SELECT COALESCE(SUM(t.totalDistanceKm), 0) FROM Trip t WHERE t.user = :user")
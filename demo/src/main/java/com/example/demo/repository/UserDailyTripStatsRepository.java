@@ -0,0 +1,37 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.UserDailyTripStats;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface UserDailyTripStatsRepository
+    extends JpaRepository<UserDailyTripStats, Long> {
+    Optional<UserDailyTripStats> findByUserIdAndDay(long userId, LocalDate day);
+
+    List<UserDailyTripStats> findByDayGreaterThanEqual(LocalDate day);
+
+    List<UserDailyTripStats> findByUserId(long userId);
+
+    @Modifying
+    @Query("DELETE FROM UserDailyTripStats s WHERE s.userId = :userId")
+    int deleteByUserId(long userId);
+
+    List<UserDailyTripStats> findByUserIdAndDayBetween(
+        long userId,
+        LocalDate from,
+        LocalDate to
+    );
+
+    List<UserDailyTripStats> findByUserIdInAndDayBetween(
+        Collection<Long> userIds,
+        LocalDate from,
+        LocalDate to
+    );
+}
@@ -1,9 +1,12 @@
 package com.example.demo.repository;
 
 import com.example.demo.model.User;
-import java.time.LocalDateTime;
+import jakarta.persistence.LockModeType;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
@@ -13,6 +16,13 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     // User findById(long id);
 
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT u FROM User u WHERE u.id = :id")
+    Optional<User> lockById(long id);
+
+    @Query("SELECT u.id FROM User u WHERE u.id IN :ids")
+    List<Long> findExistingIds(Collection<Long> ids);
+
     public record LeaderboardRow(
 
         String username,
@@ -21,55 +31,34 @@ public interface UserRepository extends JpaRepository<User, Long> {
         double value
     ) {}
 
-    @Query(
-        "SELECT new com.example.demo.repository.UserRepository$LeaderboardRow(u.username, u.firstName, u.lastName, SUM(t.totalEmissionsCO2eKg) AS value) " +
-        "FROM User u " +
-        "JOIN Trip t ON t.user = u " +
-        "WHERE t.createdAt >= :since " +
-        "GROUP BY u.username, u.firstName, u.lastName " +
-        "ORDER BY value ASC"
-    )
-    List<LeaderboardRow> getLeaderboardTotalEmissions(LocalDateTime since);
-
-    @Query(
-        "SELECT new com.example.demo.repository.UserRepository$LeaderboardRow(u.username, u.firstName, u.lastName, SUM(t.savedEmissionsCO2eKg) AS value) " +
-        "FROM User u " +
-        "JOIN Trip t ON t.user = u " +
-        "WHERE t.createdAt >= :since " +
-        "GROUP BY u.username, u.firstName, u.lastName " +
-        "ORDER BY value DESC"
-    )
-    List<LeaderboardRow> getLeaderboardTotalSavedEmissions(LocalDateTime since);
-
-    @Query(
-        "SELECT new com.example.demo.repository.UserRepository$LeaderboardRow(u.username, u.firstName, u.lastName, AVG(t.totalEmissionsCO2eKg / t.totalDistanceKm) AS value) " +
-        "FROM User u " +
-        "JOIN Trip t ON t.user = u " +
-        "WHERE t.createdAt >= :since " +
-        "GROUP BY u.username, u.firstName, u.lastName " +
-        "ORDER BY value ASC"
-    )
-    List<LeaderboardRow> getLeaderboardAverageEmissionsPerKm(
-        LocalDateTime since
-    );
-
-    @Query(
-        "SELECT new com.example.demo.repository.UserRepository$LeaderboardRow(u.username, u.firstName, u.lastName, SUM(t.totalDistanceKm) AS value) " +
-        "FROM User u " +
-        "JOIN Trip t ON t.user = u " +
-        "WHERE t.createdAt >= :since " +
-        "GROUP BY u.username, u.firstName, u.lastName " +
-        "ORDER BY value DESC"
-    )
-    List<LeaderboardRow> getLeaderboardTotalDistance(LocalDateTime since);
+    public record UserTotalsRow(
+        long userId,
+        String username,
+        String firstName,
+        String lastName,
+        long trips,
+        double emissions,
+        double savedEmissions,
+        double durationSeconds,
+        double distanceKm,
+        double emissionsPerKmSum,
+        long emissionsPerKmCount
+    ) {}
 
+    // Per-user totals for every leaderboard metric in one pass, used to
+    // bootstrap and reconcile the in-memory leaderboards
     @Query(
-        "SELECT new com.example.demo.repository.UserRepository$LeaderboardRow(u.username, u.firstName, u.lastName, SUM(t.totalDurationSeconds) AS value) " +
+        "SELECT new com.example.demo.repository.UserRepository$UserTotalsRow(u.id, u.username, u.firstName, u.lastName, " +
+        "COUNT(t), " +
+        "COALESCE(SUM(t.totalEmissionsCO2eKg), 0), " +
+        "COALESCE(SUM(t.savedEmissionsCO2eKg), 0), " +
+        "COALESCE(SUM(t.totalDurationSeconds), 0), " +
+        "COALESCE(SUM(t.totalDistanceKm), 0), " +
+        "COALESCE(SUM(CASE WHEN t.totalDistanceKm > 0 THEN t.totalEmissionsCO2eKg / t.totalDistanceKm ELSE 0 END), 0), " +
+        "SUM(CASE WHEN t.totalDistanceKm > 0 THEN 1L ELSE 0L END)) " +
         "FROM User u " +
         "JOIN Trip t ON t.user = u " +
-        "WHERE t.createdAt >= :since " +
-        "GROUP BY u.username, u.firstName, u.lastName " +
-        "ORDER BY value DESC"
+        "GROUP BY u.id, u.username, u.firstName, u.lastName"
     )
-    List<LeaderboardRow> getLeaderboardTotalDuration(LocalDateTime since);
+    List<UserTotalsRow> getUserTotals();
 }
@@ -0,0 +1,147 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.TripRepository;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory prefix index of known addresses, ranked by how often they are
+ * used as trip origin or destination.
+ *
+ * Addresses are kept sorted by their normalized form, so all addresses with a
+ * given prefix are one contiguous range. The index is bounded; when it grows
+ * past its limit the least used addresses are dropped.
+ */
+@Component
+public class AddressIndex {
+
+    private static final class Entry {
+        private final String address;
+        private final AtomicLong uses = new AtomicLong();
+
+        private Entry(String address) {
+            this.address = address;
+        }
+    }
+
+    private final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final TripRepository tripRepository;
+    private final int maxEntries;
+    private final int maxScan;
+
+    public AddressIndex(
+            TripRepository tripRepository,
+            @Value("${transport.addresses.max-entries:100000}") int maxEntries,
+            @Value("${transport.addresses.max-scan:1000}") int maxScan) {
+        this.tripRepository = tripRepository;
+        this.maxEntries = maxEntries;
+        this.maxScan = maxScan;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadTripAddresses() {
+        for (TripRepository.AddressUsage usage : tripRepository.getOriginUsage()) {
+            record(usage.address(), usage.uses());
+        }
+        for (TripRepository.AddressUsage usage : tripRepository.getDestinationUsage()) {
+            record(usage.address(), usage.uses());
+        }
+        System.out.println("Indexed " + entries.size() + " trip addresses");
+    }
+
+    /**
+     * Records that an address was used in a trip.
+     */
+    public void recordUse(String address) {
+        record(address, 1);
+    }
+
+    /**
+     * Adds addresses suggested by an external provider without counting them
+     * as used.
+     */
+    public void recordSuggestions(List<String> addresses) {
+        for (String address : addresses) {
+            record(address, 0);
+        }
+    }
+
+    private void record(String address, long uses) {
+        String key = DirectionsKey.normalize(address);
+        if (key.isEmpty()) {
+            return;
+        }
+        Entry entry = entries.computeIfAbsent(key, k -> new Entry(address.trim()));
+        entry.uses.addAndGet(uses);
+        if (entries.size() > maxEntries) {
+            evictLeastUsed();
+        }
+    }
+
+    /**
+     * Gets the most used addresses starting with the given prefix.
+     */
+    public List<String> suggest(String prefix, int limit) {
+        String key = DirectionsKey.normalize(prefix);
+        if (key.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        // Keep the most used matches in a small min-heap
+        PriorityQueue<Entry> best = new PriorityQueue<>(
+                Comparator.comparingLong((Entry entry) -> entry.uses.get()));
+        int scanned = 0;
+        for (Entry entry : entries.subMap(key, true, key + Character.MAX_VALUE, true).values()) {
+            best.add(entry);
+            if (best.size() > limit) {
+                best.poll();
+            }
+            if (++scanned >= maxScan) {
+                break;
+            }
+        }
+
+        List<String> suggestions = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            suggestions.add(best.poll().address);
+        }
+        return suggestions.reversed();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void evictLeastUsed() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            int excess = entries.size() - maxEntries;
+            if (excess <= 0) {
+                return;
+            }
+            // Drop a little more than needed so eviction does not run on
+            // every insert once the index is full
+            int toRemove = excess + maxEntries / 10;
+            List<Map.Entry<String, Entry>> candidates = new ArrayList<>(entries.entrySet());
+            candidates.sort(Comparator.comparingLong(candidate -> candidate.getValue().uses.get()));
+            for (int i = 0; i < toRemove && i < candidates.size(); i++) {
+                entries.remove(candidates.get(i).getKey());
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+}
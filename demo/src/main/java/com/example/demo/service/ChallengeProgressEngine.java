@@ -0,0 +1,45 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Challenge.ChallengeType;
+import com.example.demo.repository.ChallengeStatusRepository;
+import com.example.demo.repository.UserRepository;
+import java.time.LocalDateTime;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Applies a trip to all of a user's unfinished challenges with a fixed
+ * number of statements, however many challenges the user has: one for the
+ * reward points, and one per challenge type for the progress.
+ */
+@Service
+public class ChallengeProgressEngine {
+
+    private final ChallengeStatusRepository challengeStatusRepository;
+    private final UserRepository userRepository;
+
+    public ChallengeProgressEngine(
+            ChallengeStatusRepository challengeStatusRepository,
+            UserRepository userRepository) {
+        this.challengeStatusRepository = challengeStatusRepository;
+        this.userRepository = userRepository;
+    }
+
+    /**
+     * Adds a trip's saved emissions to the user's metric challenges and one
+     * action to their action challenges, and awards the points of the
+     * challenges this completes.
+     */
+    @Transactional
+    public void recordTrip(long userId, double savedEmissionsCO2eKg) {
+        // The points are computed from the progress before the trip, so
+        // trips of the same user must not interleave
+        if (userRepository.lockById(userId).isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        challengeStatusRepository.awardCompletedRewards(userId, savedEmissionsCO2eKg);
+        challengeStatusRepository.addProgress(userId, ChallengeType.METRIC, savedEmissionsCO2eKg, now);
+        challengeStatusRepository.addProgress(userId, ChallengeType.ACTION, 1, now);
+    }
+}
@@ -2,6 +2,7 @@ package com.example.demo.service;
 
 import com.example.demo.controller.ChallengeStatusController.MetricUpdate;
 import com.example.demo.model.Challenge;
+import com.example.demo.model.Trip;
 import com.example.demo.model.User;
 import com.example.demo.model.ChallengeStatus;
 import org.springframework.http.HttpStatus;
@@ -19,12 +20,14 @@ public class ChallengeStatusService {
     private final UserServiceImpl userService;
     private final ChallengeStatusRepository challengeStatusRepo;
     private final ChallengeService challengeService;
+    private final ChallengeProgressEngine challengeProgressEngine;
 
     public ChallengeStatusService(ChallengeStatusRepository challengeStatusRepo, UserServiceImpl userService,
-            ChallengeService challengeService) {
+            ChallengeService challengeService, ChallengeProgressEngine challengeProgressEngine) {
         this.challengeStatusRepo = challengeStatusRepo;
         this.userService = userService;
         this.challengeService = challengeService;
+        this.challengeProgressEngine = challengeProgressEngine;
     }
 
     /**
@@ -148,6 +151,18 @@ public class ChallengeStatusService {
         return challengeStatusRepo.save(status);
     }
 
+    /**
+     * Advance a user's unfinished challenges by a new trip, completing and
+     * rewarding those that reach their target
+     * 
+     * @param user
+     * @param trip
+     */
+    public void recordTrip(User user, Trip trip) {
+        Double saved = trip.getSavedEmissionsCO2eKg();
+        challengeProgressEngine.recordTrip(user.getId(), saved != null ? saved : 0);
+    }
+
     /**
      * Delete a user challenge
      * 
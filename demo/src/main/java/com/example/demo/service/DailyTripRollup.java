@@ -0,0 +1,208 @@
+package com.example.demo.service;
+
+import com.example.demo.model.UserDailyTripStats;
+import com.example.demo.repository.TripRepository;
+import com.example.demo.repository.UserDailyTripStatsRepository;
+import com.example.demo.repository.UserRepository;
+import com.example.demo.service.TripChangedEvent.TripFigures;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Maintains the per-user daily trip totals in {@link UserDailyTripStats}.
+ * Days are calendar days in the configured zone.
+ *
+ * Rows are updated in the same transaction as the trip write. The whole
+ * table can be rebuilt from the trips with {@link #backfill()}, which also
+ * runs at startup when the table is empty. A finished backfill publishes a
+ * {@link RollupBackfilledEvent}.
+ */
+@Service
+public class DailyTripRollup {
+
+    private final UserDailyTripStatsRepository statsRepository;
+    private final TripRepository tripRepository;
+    private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int backfillPageSize;
+    private final ZoneId zone;
+
+    public DailyTripRollup(
+            UserDailyTripStatsRepository statsRepository,
+            TripRepository tripRepository,
+            UserRepository userRepository,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${transport.rollup.backfill-page-size:5000}") int backfillPageSize,
+            @Value("${transport.zone:Europe/Oslo}") String zone) {
+        this.statsRepository = statsRepository;
+        this.tripRepository = tripRepository;
+        this.userRepository = userRepository;
+        this.eventPublisher = eventPublisher;
+        this.backfillPageSize = backfillPageSize;
+        this.zone = ZoneId.of(zone);
+    }
+
+    /**
+     * Gets the day in the configured zone of a trip time, which is stored as
+     * local time of the server.
+     */
+    public LocalDate dayOf(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).withZoneSameInstant(zone).toLocalDate();
+    }
+
+    public LocalDate today() {
+        return LocalDate.now(zone);
+    }
+
+    /**
+     * Gets the rollup rows for the days from since (inclusive) to today.
+     */
+    public List<UserDailyTripStats> getDailyStatsSince(LocalDate since) {
+        return statsRepository.findByDayGreaterThanEqual(since);
+    }
+
+    @EventListener
+    @Transactional
+    public void onTripChanged(TripChangedEvent event) {
+        if (event.before() != null) {
+            apply(event.before(), -1);
+        }
+        if (event.after() != null) {
+            apply(event.after(), 1);
+        }
+    }
+
+    private void apply(TripFigures trip, int sign) {
+        if (trip.userId() == null || trip.createdAt() == null) {
+            return;
+        }
+        // Serializes rollup writes per user, so two trips on a new day cannot
+        // both insert its row
+        if (userRepository.lockById(trip.userId()).isEmpty()) {
+            return;
+        }
+        LocalDate day = dayOf(trip.createdAt());
+        UserDailyTripStats stats = statsRepository
+                .findByUserIdAndDay(trip.userId(), day)
+                .orElseGet(() -> new UserDailyTripStats(trip.userId(), day));
+        add(stats, trip, sign);
+        if (stats.getTrips() > 0) {
+            statsRepository.save(stats);
+        } else if (stats.getId() != null) {
+            statsRepository.delete(stats);
+        }
+    }
+
+    private record UserDay(long userId, LocalDate day) {
+    }
+
+    @EventListener
+    @Transactional
+    public void onUserTripsRemoved(UserTripsRemovedEvent event) {
+        if (userRepository.lockById(event.userId()).isPresent()) {
+            statsRepository.deleteByUserId(event.userId());
+        }
+    }
+
+    @EventListener
+    @Transactional
+    public void onTripsImported(TripsImportedEvent event) {
+        // Locked in id order, so two imports cannot deadlock
+        for (Long userId : new TreeSet<>(event.trips().stream().map(TripFigures::userId).toList())) {
+            userRepository.lockById(userId);
+        }
+        List<UserDay> keys = event.trips().stream()
+                .map(trip -> new UserDay(trip.userId(), dayOf(trip.createdAt())))
+                .toList();
+        if (keys.isEmpty()) {
+            return;
+        }
+        // One query for the chunk's users and days instead of one per pair
+        Set<Long> userIds = new HashSet<>();
+        LocalDate from = keys.get(0).day();
+        LocalDate to = from;
+        for (UserDay key : keys) {
+            userIds.add(key.userId());
+            from = key.day().isBefore(from) ? key.day() : from;
+            to = key.day().isAfter(to) ? key.day() : to;
+        }
+        Map<UserDay, UserDailyTripStats> existing = new HashMap<>();
+        for (UserDailyTripStats stats : statsRepository.findByUserIdInAndDayBetween(userIds, from, to)) {
+            existing.put(new UserDay(stats.getUserId(), stats.getDay()), stats);
+        }
+
+        Map<UserDay, UserDailyTripStats> changed = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            UserDay key = keys.get(i);
+            UserDailyTripStats stats = changed.computeIfAbsent(key, userDay -> existing.getOrDefault(
+                    userDay,
+                    new UserDailyTripStats(userDay.userId(), userDay.day())));
+            add(stats, event.trips().get(i), 1);
+        }
+        statsRepository.saveAll(changed.values());
+    }
+
+    private static void add(UserDailyTripStats stats, TripFigures trip, int sign) {
+        stats.add(
+                trip.distanceKm(),
+                trip.durationSeconds(),
+                trip.emissionsCO2eKg(),
+                trip.savedEmissionsCO2eKg(),
+                sign);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfillIfEmpty() {
+        if (statsRepository.count() == 0 && tripRepository.count() > 0) {
+            backfill();
+        }
+    }
+
+    /**
+     * Rebuilds the rollup from the trips table, reading the trips in pages.
+     * Trips written while this runs may be counted twice or not at all, so
+     * it is meant for startup and maintenance windows.
+     *
+     * @return the number of rollup rows written
+     */
+    @Transactional
+    public int backfill() {
+        statsRepository.deleteAllInBatch();
+
+        Map<UserDay, UserDailyTripStats> rows = new HashMap<>();
+        long afterId = 0;
+        List<TripRepository.TripFiguresRow> page;
+        do {
+            page = tripRepository.getTripFiguresAfter(afterId, Limit.of(backfillPageSize));
+            for (TripRepository.TripFiguresRow row : page) {
+                afterId = row.id();
+                TripFigures trip = TripFigures.of(row);
+                if (trip.userId() == null || trip.createdAt() == null) {
+                    continue;
+                }
+                UserDay key = new UserDay(trip.userId(), dayOf(trip.createdAt()));
+                add(rows.computeIfAbsent(key, k -> new UserDailyTripStats(k.userId(), k.day())), trip, 1);
+            }
+        } while (page.size() == backfillPageSize);
+
+        statsRepository.saveAll(rows.values());
+        System.out.println("Backfilled " + rows.size() + " daily trip rollup rows");
+        eventPublisher.publishEvent(new RollupBackfilledEvent(rows.size()));
+        return rows.size();
+    }
+}
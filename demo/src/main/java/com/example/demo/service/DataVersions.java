@@ -0,0 +1,70 @@
+package com.example.demo.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Version counters for data derived from trips, used as ETags so clients
+ * polling for unchanged data get a 304 without the data being read.
+ *
+ * Counters only live in memory, so every tag also carries the time this
+ * instance started, which invalidates tags from before a restart.
+ */
+@Component
+public class DataVersions {
+
+    private final long epoch = System.currentTimeMillis();
+    // Bumped when derived data is rebuilt wholesale, e.g. by a backfill
+    private final AtomicLong generation = new AtomicLong();
+    private final Map<Long, AtomicLong> userVersions = new ConcurrentHashMap<>();
+
+    // After commit, so a tag never changes before the data it stands for, and
+    // after the listeners that evict cached copies of that data
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.LOWEST_PRECEDENCE - 1)
+    public void onTripChanged(TripChangedEvent event) {
+        if (event.before() != null && event.before().userId() != null) {
+            bumpUser(event.before().userId());
+        }
+        if (event.after() != null && event.after().userId() != null) {
+            bumpUser(event.after().userId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.LOWEST_PRECEDENCE - 1)
+    public void onTripsImported(TripsImportedEvent event) {
+        event.trips().stream()
+                .map(TripChangedEvent.TripFigures::userId)
+                .distinct()
+                .forEach(this::bumpUser);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.LOWEST_PRECEDENCE - 1)
+    public void onUserTripsRemoved(UserTripsRemovedEvent event) {
+        bumpUser(event.userId());
+    }
+
+    public void bumpUser(long userId) {
+        userVersions.computeIfAbsent(userId, id -> new AtomicLong()).incrementAndGet();
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+    }
+
+    public String userTag(long userId) {
+        AtomicLong version = userVersions.get(userId);
+        return tag("u" + userId, version != null ? version.get() : 0);
+    }
+
+    public String tag(String name, long version) {
+        return name + "-" + epoch + "-" + generation.get() + "-" + version;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.demo.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.maps.model.DirectionsResult;
+import com.google.maps.model.TravelMode;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded in-memory cache of directions results.
+ *
+ * Entries are evicted by size (W-TinyLFU) and expire after a TTL that depends
+ * on the travel mode, since transit schedules go stale faster than roads.
+ */
+@Component
+public class DirectionsCache {
+
+    private final Cache<DirectionsKey, DirectionsResult> cache;
+    private final Map<TravelMode, Long> ttlNanos = new EnumMap<>(TravelMode.class);
+
+    public DirectionsCache(
+            @Value("${transport.directions.cache.max-size:10000}") long maxSize,
+            @Value("${transport.directions.cache.ttl-minutes.walking:1440}") long walkingTtlMinutes,
+            @Value("${transport.directions.cache.ttl-minutes.bicycling:1440}") long bicyclingTtlMinutes,
+            @Value("${transport.directions.cache.ttl-minutes.driving:60}") long drivingTtlMinutes,
+            @Value("${transport.directions.cache.ttl-minutes.transit:10}") long transitTtlMinutes) {
+        ttlNanos.put(TravelMode.WALKING, TimeUnit.MINUTES.toNanos(walkingTtlMinutes));
+        ttlNanos.put(TravelMode.BICYCLING, TimeUnit.MINUTES.toNanos(bicyclingTtlMinutes));
+        ttlNanos.put(TravelMode.DRIVING, TimeUnit.MINUTES.toNanos(drivingTtlMinutes));
+        ttlNanos.put(TravelMode.TRANSIT, TimeUnit.MINUTES.toNanos(transitTtlMinutes));
+
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<DirectionsKey, DirectionsResult>() {
+                    @Override
+                    public long expireAfterCreate(
+                            DirectionsKey key,
+                            DirectionsResult value,
+                            long currentTime) {
+                        return ttlFor(key.mode());
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(
+                            DirectionsKey key,
+                            DirectionsResult value,
+                            long currentTime,
+                            long currentDuration) {
+                        return ttlFor(key.mode());
+                    }
+
+                    @Override
+                    public long expireAfterRead(
+                            DirectionsKey key,
+                            DirectionsResult value,
+                            long currentTime,
+                            long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    private long ttlFor(TravelMode mode) {
+        return ttlNanos.getOrDefault(mode, ttlNanos.get(TravelMode.TRANSIT));
+    }
+
+    /**
+     * Gets how long results for a travel mode are kept, zero if they are not
+     * cached.
+     */
+    public Duration ttl(TravelMode mode) {
+        return Duration.ofNanos(ttlFor(mode));
+    }
+
+    public DirectionsResult get(DirectionsKey key) {
+        return cache.getIfPresent(key);
+    }
+
+    public void put(DirectionsKey key, DirectionsResult result) {
+        if (result != null) {
+            cache.put(key, result);
+        }
+    }
+
+    public record Stats(
+            long size,
+            long hitCount,
+            long missCount,
+            long evictionCount,
+            double hitRate) {
+    }
+
+    public Stats stats() {
+        CacheStats stats = cache.stats();
+        return new Stats(
+                cache.estimatedSize(),
+                stats.hitCount(),
+                stats.missCount(),
+                stats.evictionCount(),
+                stats.hitRate());
+    }
+}
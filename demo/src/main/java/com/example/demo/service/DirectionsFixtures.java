@@ -0,0 +1,102 @@
+package com.example.demo.service;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.maps.model.DirectionsResult;
+import com.google.maps.model.TravelMode;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.util.HexFormat;
+
+/**
+ * Reads and writes recorded directions responses, one JSON file per route.
+ */
+public final class DirectionsFixtures {
+
+    public static class Fixture {
+        public String origin;
+        public String destination;
+        public TravelMode mode;
+        public DirectionsResult result;
+
+        public Fixture() {
+        }
+
+        public Fixture(
+                String origin,
+                String destination,
+                TravelMode mode,
+                DirectionsResult result) {
+            this.origin = origin;
+            this.destination = destination;
+            this.mode = mode;
+            this.result = result;
+        }
+    }
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(ZonedDateTime.class, new ZonedDateTimeAdapter())
+            .create();
+
+    private DirectionsFixtures() {
+    }
+
+    public static Fixture read(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return GSON.fromJson(reader, Fixture.class);
+        }
+    }
+
+    public static void write(Path directory, Fixture fixture) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(fileName(
+                DirectionsKey.of(fixture.origin, fixture.destination, fixture.mode)));
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            GSON.toJson(fixture, writer);
+        }
+    }
+
+    static String fileName(DirectionsKey key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(
+                    (key.origin() + "\n" + key.destination()).getBytes(StandardCharsets.UTF_8));
+            return key.mode().name().toLowerCase() + "-" +
+                    HexFormat.of().formatHex(hash, 0, 8) + ".json";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // java.time types cannot be serialized reflectively on recent JDKs
+    private static class ZonedDateTimeAdapter extends TypeAdapter<ZonedDateTime> {
+        @Override
+        public void write(JsonWriter out, ZonedDateTime value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.value(value.toString());
+        }
+
+        @Override
+        public ZonedDateTime read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return ZonedDateTime.parse(in.nextString());
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.demo.service;
+
+import com.google.maps.model.TravelMode;
+import java.util.Locale;
+
+/**
+ * Lookup key for a directions request.
+ *
+ * Origin and destination are normalized so that "Bergen  Sentrum" and
+ * "bergen sentrum" share the same entry.
+ */
+public record DirectionsKey(
+        String origin,
+        String destination,
+        TravelMode mode) {
+
+    public static DirectionsKey of(
+            String origin,
+            String destination,
+            TravelMode mode) {
+        return new DirectionsKey(normalize(origin), normalize(destination), mode);
+    }
+
+    public static String normalize(String address) {
+        if (address == null) {
+            return "";
+        }
+        return address.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+}
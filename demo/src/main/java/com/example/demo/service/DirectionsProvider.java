@@ -0,0 +1,22 @@
+package com.example.demo.service;
+
+import com.google.maps.model.DirectionsResult;
+import com.google.maps.model.TravelMode;
+
+/**
+ * Source of directions between two addresses.
+ */
+public interface DirectionsProvider {
+    /**
+     * Gets directions for one travel mode.
+     *
+     * @param origin      the origin address
+     * @param destination the destination address
+     * @param mode        the travel mode
+     * @return the directions, or null if there is no route for the mode
+     */
+    DirectionsResult getDirections(
+            String origin,
+            String destination,
+            TravelMode mode);
+}
@@ -0,0 +1,145 @@
+package com.example.demo.service;
+
+import com.example.demo.model.TransportationMode;
+import com.example.demo.repository.TransportationModeRepository;
+import com.google.maps.model.TravelMode;
+import com.google.maps.model.VehicleType;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Emission factors per travel mode and transit vehicle type.
+ *
+ * Factors are stored as {@link TransportationMode} rows named after the travel
+ * mode ("driving") or the transit vehicle type ("transit:bus"), in grams of
+ * CO2e per kilometer. They are loaded into a flat lookup table that is swapped
+ * atomically on reload, so factor edits apply without a restart. Each table
+ * has a generation derived from its contents, which lets stored estimates
+ * tell whether they were computed with the current factors.
+ *
+ * All factors are intended to include amortized vehicle production emissions
+ * and fuel emissions, but not food emissions (e.g. from walking). Public
+ * transport is calculated per person.
+ */
+@Component
+public class EmissionFactorEngine {
+
+    private static final TravelMode[] TRAVEL_MODES = TravelMode.values();
+    private static final VehicleType[] VEHICLE_TYPES = VehicleType.values();
+    // Slot 0 is used when there is no transit vehicle type
+    private static final int SLOTS = VEHICLE_TYPES.length + 1;
+
+    // Used when a factor is not in the database yet, in grams per kilometer
+    private static final Map<String, Double> DEFAULT_FACTORS = new LinkedHashMap<>();
+
+    static {
+        DEFAULT_FACTORS.put("walking", 0.0);
+        DEFAULT_FACTORS.put("bicycling", 0.0);
+        DEFAULT_FACTORS.put("driving", 118.0);
+        DEFAULT_FACTORS.put("transit", 0.0);
+        // E.g. Skyss buses. TODO: check line operator
+        DEFAULT_FACTORS.put("transit:bus", 89.0);
+        // E.g. Bybanen
+        DEFAULT_FACTORS.put("transit:tram", 1.0);
+        // E.g. Vy. Source: Claude estimate
+        DEFAULT_FACTORS.put("transit:heavy_rail", 5.0);
+    }
+
+    private final TransportationModeRepository transportationModeRepository;
+
+    // Kilograms per kilometer, indexed by travel mode and vehicle type slot
+    private volatile FactorTable table;
+
+    public EmissionFactorEngine(
+            TransportationModeRepository transportationModeRepository) {
+        this.transportationModeRepository = transportationModeRepository;
+        this.table = buildTable(DEFAULT_FACTORS);
+    }
+
+    /**
+     * Gets the emission factor in kilograms of CO2e per kilometer.
+     *
+     * @param mode        the travel mode of the step
+     * @param vehicleType the transit vehicle type, or null
+     */
+    public double factorKgPerKm(TravelMode mode, VehicleType vehicleType) {
+        if (mode == null) {
+            return 0.0;
+        }
+        int slot = vehicleType == null ? 0 : vehicleType.ordinal() + 1;
+        return table.factors()[mode.ordinal() * SLOTS + slot];
+    }
+
+    /**
+     * Gets the generation of the current factors. It is the same across
+     * restarts and instances for the same factors, and changes when any
+     * factor changes.
+     */
+    public long generation() {
+        return table.generation();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seedAndLoad() {
+        for (Map.Entry<String, Double> factor : DEFAULT_FACTORS.entrySet()) {
+            if (transportationModeRepository.findByTransportationModeName(factor.getKey()) == null) {
+                transportationModeRepository.save(
+                        new TransportationMode(factor.getKey(), factor.getValue()));
+            }
+        }
+        reload();
+    }
+
+    @Scheduled(fixedDelayString = "${transport.emission-factors.refresh-ms:60000}")
+    public void reload() {
+        Map<String, Double> gramsPerKm = new HashMap<>(DEFAULT_FACTORS);
+        for (TransportationMode mode : transportationModeRepository.findAll()) {
+            gramsPerKm.put(
+                    mode.getTransportationModeName().toLowerCase(Locale.ROOT),
+                    mode.getCo2PerKilometer());
+        }
+        table = buildTable(gramsPerKm);
+    }
+
+    public List<TransportationMode> getFactors() {
+        return transportationModeRepository.findAll();
+    }
+
+    public TransportationMode setFactor(String name, double gramsPerKm) {
+        String key = name.toLowerCase(Locale.ROOT);
+        TransportationMode mode = transportationModeRepository.findByTransportationModeName(key);
+        if (mode == null) {
+            mode = new TransportationMode(key, gramsPerKm);
+        }
+        mode.setCo2PerKilometer(gramsPerKm);
+        mode = transportationModeRepository.save(mode);
+        reload();
+        return mode;
+    }
+
+    private static FactorTable buildTable(Map<String, Double> gramsPerKm) {
+        double[] factors = new double[TRAVEL_MODES.length * SLOTS];
+        for (TravelMode mode : TRAVEL_MODES) {
+            String modeName = mode.name().toLowerCase(Locale.ROOT);
+            double modeFactor = gramsPerKm.getOrDefault(modeName, 0.0) / 1000;
+            int base = mode.ordinal() * SLOTS;
+            factors[base] = modeFactor;
+            for (VehicleType vehicleType : VEHICLE_TYPES) {
+                String name = modeName + ":" + vehicleType.name().toLowerCase(Locale.ROOT);
+                Double factor = gramsPerKm.get(name);
+                factors[base + vehicleType.ordinal() + 1] = factor != null ? factor / 1000 : modeFactor;
+            }
+        }
+        return new FactorTable(factors, Arrays.hashCode(factors));
+    }
+
+    private record FactorTable(double[] factors, long generation) {}
+}
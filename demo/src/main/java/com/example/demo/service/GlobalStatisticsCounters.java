@@ -0,0 +1,156 @@
+package com.example.demo.service;
+
+import com.example.demo.model.GlobalStatistics;
+import com.example.demo.repository.GlobalStatisticsRepository;
+import com.example.demo.repository.TripRepository;
+import com.example.demo.repository.UserRepository;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Global user and trip totals, kept in striped counters so writers never
+ * contend and the admin dashboard never aggregates whole tables.
+ *
+ * The counters are checkpointed to {@link GlobalStatistics} periodically.
+ * At startup they are loaded from the checkpoint, then reconciled against
+ * the tables in the background and periodically after that. Checkpoints
+ * start once the first reconcile is done, so counters that may have drifted
+ * are never saved over a good checkpoint.
+ */
+@Component
+public class GlobalStatisticsCounters {
+
+    private final UserRepository userRepository;
+    private final TripRepository tripRepository;
+    private final GlobalStatisticsRepository checkpointRepository;
+    private final TripCommitGate tripCommitGate;
+
+    private final LongAdder users = new LongAdder();
+    private final LongAdder trips = new LongAdder();
+    private final DoubleAdder distanceKm = new DoubleAdder();
+    private final DoubleAdder emissionsCO2eKg = new DoubleAdder();
+    private volatile boolean reconciled;
+
+    public GlobalStatisticsCounters(
+            UserRepository userRepository,
+            TripRepository tripRepository,
+            GlobalStatisticsRepository checkpointRepository,
+            TripCommitGate tripCommitGate) {
+        this.userRepository = userRepository;
+        this.tripRepository = tripRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.tripCommitGate = tripCommitGate;
+    }
+
+    public record Totals(
+            long users,
+            long trips,
+            double distanceKm,
+            double emissionsCO2eKg) {
+    }
+
+    public Totals totals() {
+        return new Totals(users.sum(), trips.sum(), distanceKm.sum(), emissionsCO2eKg.sum());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTripChanged(TripChangedEvent event) {
+        if (event.before() != null) {
+            trips.decrement();
+            distanceKm.add(-event.before().distanceKm());
+            emissionsCO2eKg.add(-event.before().emissionsCO2eKg());
+        }
+        if (event.after() != null) {
+            trips.increment();
+            distanceKm.add(event.after().distanceKm());
+            emissionsCO2eKg.add(event.after().emissionsCO2eKg());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTripsImported(TripsImportedEvent event) {
+        for (TripChangedEvent.TripFigures trip : event.trips()) {
+            trips.increment();
+            distanceKm.add(trip.distanceKm());
+            emissionsCO2eKg.add(trip.emissionsCO2eKg());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserTripsRemoved(UserTripsRemovedEvent event) {
+        trips.add(-event.total().trips());
+        distanceKm.add(-event.total().distanceKm());
+        emissionsCO2eKg.add(-event.total().emissionsCO2eKg());
+    }
+
+    public void userAdded() {
+        users.increment();
+    }
+
+    public void userRemoved() {
+        users.decrement();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadAndReconcile() {
+        checkpointRepository.findById(GlobalStatistics.ID).ifPresent(checkpoint -> {
+            users.add(checkpoint.getUsers());
+            trips.add(checkpoint.getTrips());
+            distanceKm.add(checkpoint.getDistanceKm());
+            emissionsCO2eKg.add(checkpoint.getEmissionsCO2eKg());
+        });
+        Thread.ofVirtual().name("global-statistics-reconcile").start(this::reconcile);
+    }
+
+    /**
+     * Corrects the counters with exact totals from the tables. The trip
+     * aggregates run through the {@link TripCommitGate}, so no trip is both
+     * counted by them and applied after commit. A user written while the
+     * user count runs may be off by one until the next reconcile.
+     */
+    @Scheduled(
+        initialDelayString = "${transport.global-statistics.reconcile-interval-ms:3600000}",
+        fixedDelayString = "${transport.global-statistics.reconcile-interval-ms:3600000}"
+    )
+    public void reconcile() {
+        long before = users.sum();
+        long userCount = userRepository.count();
+        users.add(userCount - before);
+        tripCommitGate.reload(this::reconcileTrips);
+        reconciled = true;
+    }
+
+    private Totals reconcileTrips() {
+        Totals before = totals();
+        long tripCount = tripRepository.count();
+        double distance = tripRepository.sumTotalDistanceKm();
+        double emissions = tripRepository.sumTotalEmissionsCO2eKg();
+        trips.add(tripCount - before.trips());
+        distanceKm.add(distance - before.distanceKm());
+        emissionsCO2eKg.add(emissions - before.emissionsCO2eKg());
+        return totals();
+    }
+
+    @Scheduled(
+        initialDelayString = "${transport.global-statistics.checkpoint-interval-ms:60000}",
+        fixedDelayString = "${transport.global-statistics.checkpoint-interval-ms:60000}"
+    )
+    public void checkpoint() {
+        if (!reconciled) {
+            return;
+        }
+        Totals totals = totals();
+        checkpointRepository.save(new GlobalStatistics(
+                totals.users(),
+                totals.trips(),
+                totals.distanceKm(),
+                totals.emissionsCO2eKg(),
+                LocalDateTime.now()));
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.demo.service;
+
+import com.google.maps.DirectionsApi;
+import com.google.maps.DirectionsApiRequest;
+import com.google.maps.PlaceAutocompleteRequest;
+import com.google.maps.PlacesApi;
+import com.google.maps.errors.ZeroResultsException;
+import com.google.maps.model.AutocompletePrediction;
+import com.google.maps.model.DirectionsResult;
+import com.google.maps.model.TransitMode;
+import com.google.maps.model.TravelMode;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Directions and places backed by the Google Maps APIs.
+ *
+ * When transport.replay.record-dir is set, every directions response is also
+ * written there as a fixture for {@link ReplayDirectionsProvider}.
+ */
+@Component
+@ConditionalOnProperty(name = "transport.provider", havingValue = "google", matchIfMissing = true)
+public class GoogleMapsProvider implements DirectionsProvider, PlacesProvider {
+
+    private final MapsApiClient mapsApiClient;
+    private final Path recordDirectory;
+
+    public GoogleMapsProvider(
+            MapsApiClient mapsApiClient,
+            @Value("${transport.replay.record-dir:}") String recordDirectory) {
+        this.mapsApiClient = mapsApiClient;
+        this.recordDirectory = recordDirectory.isBlank() ? null : Path.of(recordDirectory);
+    }
+
+    @Override
+    public DirectionsResult getDirections(
+            String origin,
+            String destination,
+            TravelMode mode) {
+        DirectionsApiRequest request = DirectionsApi.newRequest(mapsApiClient.context())
+                .origin(origin)
+                .destination(destination)
+                .mode(mode);
+        if (mode == TravelMode.TRANSIT) {
+            request = request.transitMode(
+                    TransitMode.BUS,
+                    TransitMode.SUBWAY,
+                    TransitMode.TRAM,
+                    TransitMode.RAIL,
+                    TransitMode.TRAIN);
+        }
+
+        DirectionsResult result = null;
+        try {
+            System.out.println("Requesting directions for mode: " + mode);
+            result = request.await();
+            System.out.println("Received directions for mode: " + mode);
+        } catch (ZeroResultsException e) {
+            System.out.println("No results found for mode: " + mode);
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new RuntimeException("Failed to fetch directions", e);
+        }
+
+        if (result != null && recordDirectory != null) {
+            record(origin, destination, mode, result);
+        }
+        return result;
+    }
+
+    @Override
+    public List<String> getAddressAutocomplete(
+            String query,
+            UUID sessionToken) {
+        PlaceAutocompleteRequest.SessionToken token = new PlaceAutocompleteRequest.SessionToken(sessionToken);
+
+        PlaceAutocompleteRequest request = PlacesApi.placeAutocomplete(
+                mapsApiClient.context(),
+                query,
+                token);
+
+        AutocompletePrediction[] result = null;
+        try {
+            result = request.await();
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new RuntimeException(
+                    "Failed to fetch address autocomplete",
+                    e);
+        }
+
+        List<String> addresses = new ArrayList<>();
+        for (AutocompletePrediction prediction : result) {
+            // TODO: not sure if this is the optimal value to use
+            addresses.add(prediction.description);
+        }
+
+        return addresses;
+    }
+
+    private void record(
+            String origin,
+            String destination,
+            TravelMode mode,
+            DirectionsResult result) {
+        try {
+            DirectionsFixtures.write(
+                    recordDirectory,
+                    new DirectionsFixtures.Fixture(origin, destination, mode, result));
+        } catch (IOException e) {
+            System.out.println("Failed to record directions fixture: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,633 @@
+package com.example.demo.service;
+
+import com.example.demo.model.User;
+import com.example.demo.model.UserDailyTripStats;
+import com.example.demo.repository.UserRepository;
+import com.example.demo.service.TransportService.LeaderboardMetric;
+import com.example.demo.service.TransportService.LeaderboardPeriod;
+import com.example.demo.service.TripChangedEvent.TripFigures;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Leaderboards served from live rankings.
+ *
+ * Totals per user are kept in memory and updated from
+ * {@link TripChangedEvent}s and the other trip events, so a trip change costs a few map updates instead
+ * of a leaderboard query. Period windows are aligned to whole days in the
+ * configured zone: per-user totals for each of the last 367 days are kept in
+ * a ring of day buckets, and each period keeps running totals over its
+ * window that are reduced by the buckets of the days leaving it at midnight.
+ * Alongside the totals, each period keeps its users ranked on every metric,
+ * so a page or one user's rank is read in logarithmic time per row, without
+ * copying or sorting the users. Readers and writers share the engine's lock,
+ * which is only held for those few lookups.
+ *
+ * All totals are bootstrapped from the trips and the daily rollup and
+ * periodically reconciled against them, which also repairs any drift from
+ * missed events. Reconciles go through the {@link TripCommitGate}, so a trip
+ * committed while one runs is never both loaded and applied.
+ */
+@Component
+public class LeaderboardEngine {
+
+    private record UserTotals(
+            String username,
+            String firstName,
+            String lastName,
+            long trips,
+            double emissions,
+            double savedEmissions,
+            double durationSeconds,
+            double distanceKm,
+            double emissionsPerKmSum,
+            long emissionsPerKmCount) {
+
+        static UserTotals of(UserRepository.UserTotalsRow row) {
+            return new UserTotals(
+                    row.username(),
+                    row.firstName(),
+                    row.lastName(),
+                    row.trips(),
+                    row.emissions(),
+                    row.savedEmissions(),
+                    row.durationSeconds(),
+                    row.distanceKm(),
+                    row.emissionsPerKmSum(),
+                    row.emissionsPerKmCount());
+        }
+
+        static UserTotals of(UserTotals names, UserDailyTripStats day) {
+            return new UserTotals(
+                    names.username(),
+                    names.firstName(),
+                    names.lastName(),
+                    day.getTrips(),
+                    day.getEmissionsCO2eKg(),
+                    day.getSavedEmissionsCO2eKg(),
+                    day.getDurationSeconds(),
+                    day.getDistanceKm(),
+                    day.getEmissionsPerKmSum(),
+                    day.getEmissionsPerKmCount());
+        }
+
+        static UserTotals of(UserTotals names, UserTripsRemovedEvent.TripSums sums) {
+            return new UserTotals(
+                    names.username(),
+                    names.firstName(),
+                    names.lastName(),
+                    sums.trips(),
+                    sums.emissionsCO2eKg(),
+                    sums.savedEmissionsCO2eKg(),
+                    sums.durationSeconds(),
+                    sums.distanceKm(),
+                    sums.emissionsPerKmSum(),
+                    sums.emissionsPerKmCount());
+        }
+
+        static UserTotals empty(User user) {
+            return new UserTotals(
+                    user.getUsername(),
+                    user.getFirstName(),
+                    user.getLastName(),
+                    0, 0, 0, 0, 0, 0, 0);
+        }
+
+        UserTotals blank() {
+            return new UserTotals(username, firstName, lastName, 0, 0, 0, 0, 0, 0, 0);
+        }
+
+        UserTotals plus(UserTotals other, int sign) {
+            return new UserTotals(
+                    username,
+                    firstName,
+                    lastName,
+                    trips + sign * other.trips(),
+                    emissions + sign * other.emissions(),
+                    savedEmissions + sign * other.savedEmissions(),
+                    durationSeconds + sign * other.durationSeconds(),
+                    distanceKm + sign * other.distanceKm(),
+                    emissionsPerKmSum + sign * other.emissionsPerKmSum(),
+                    emissionsPerKmCount + sign * other.emissionsPerKmCount());
+        }
+
+        UserTotals plus(TripFigures trip, int sign) {
+            boolean hasDistance = trip.distanceKm() > 0;
+            return new UserTotals(
+                    username,
+                    firstName,
+                    lastName,
+                    trips + sign,
+                    emissions + sign * trip.emissionsCO2eKg(),
+                    savedEmissions + sign * trip.savedEmissionsCO2eKg(),
+                    durationSeconds + sign * trip.durationSeconds(),
+                    distanceKm + sign * trip.distanceKm(),
+                    emissionsPerKmSum + (hasDistance
+                            ? sign * trip.emissionsCO2eKg() / trip.distanceKm()
+                            : 0),
+                    emissionsPerKmCount + (hasDistance ? sign : 0));
+        }
+
+        /** Returns null when the user has no value for the metric. */
+        Double value(LeaderboardMetric metric) {
+            return switch (metric) {
+                case TOTAL_EMISSIONS -> emissions;
+                case TOTAL_SAVED_EMISSIONS -> savedEmissions;
+                case TOTAL_DURATION_SECONDS -> durationSeconds;
+                case TOTAL_DISTANCE_KILOMETERS -> distanceKm;
+                case AVERAGE_CO2E_PER_KILOMETER -> emissionsPerKmCount > 0
+                        ? emissionsPerKmSum / emissionsPerKmCount
+                        : null;
+            };
+        }
+    }
+
+    // Longest window is a leap year, plus one day of slack
+    private static final int RING_DAYS = 367;
+
+    private record DayBucket(LocalDate day, Map<Long, UserTotals> users) {
+    }
+
+    /**
+     * Totals per user id over a period, with the users ranked on each metric.
+     * The rankings are only changed and read under the engine's lock.
+     */
+    private static class Board {
+        final Map<Long, UserTotals> users = new ConcurrentHashMap<>();
+        final Map<LeaderboardMetric, RankedSet<UserRepository.LeaderboardRow>> ranked = new EnumMap<>(
+                LeaderboardMetric.class);
+
+        Board() {
+            for (LeaderboardMetric metric : LeaderboardMetric.values()) {
+                ranked.put(metric, new RankedSet<>(order(metric)));
+            }
+        }
+
+        void put(long userId, UserTotals updated) {
+            rerank(users.put(userId, updated), updated);
+        }
+
+        void add(long userId, UserTotals change, int sign) {
+            UserTotals previous = users.get(userId);
+            UserTotals updated = (previous != null ? previous : change.blank()).plus(change, sign);
+            if (updated.trips() > 0) {
+                users.put(userId, updated);
+            } else {
+                users.remove(userId);
+                updated = null;
+            }
+            rerank(previous, updated);
+        }
+
+        void clear() {
+            users.clear();
+            for (RankedSet<UserRepository.LeaderboardRow> rows : ranked.values()) {
+                rows.clear();
+            }
+        }
+
+        private void rerank(UserTotals previous, UserTotals updated) {
+            for (Map.Entry<LeaderboardMetric, RankedSet<UserRepository.LeaderboardRow>> entry : ranked.entrySet()) {
+                UserRepository.LeaderboardRow before = row(previous, entry.getKey());
+                if (before != null) {
+                    entry.getValue().remove(before);
+                }
+                UserRepository.LeaderboardRow after = row(updated, entry.getKey());
+                if (after != null) {
+                    entry.getValue().add(after);
+                }
+            }
+        }
+    }
+
+    private static final class Window extends Board {
+        LocalDate start;
+    }
+
+    /**
+     * A page of a leaderboard, with the version of the data it was read from.
+     */
+    public record Page(
+            List<UserRepository.LeaderboardRow> rows,
+            String nextCursor,
+            long version) {
+    }
+
+    /**
+     * A user's 1-based rank out of total, with the rows around it starting
+     * at rank neighboursFrom.
+     */
+    public record Rank(
+            int rank,
+            int total,
+            UserRepository.LeaderboardRow row,
+            int neighboursFrom,
+            List<UserRepository.LeaderboardRow> neighbours) {
+    }
+
+    private final UserRepository userRepository;
+    private final DailyTripRollup dailyTripRollup;
+    private final TripCommitGate tripCommitGate;
+
+    // Lifetime totals per user id
+    private final Board lifetime = new Board();
+
+    // Per-user totals for the last RING_DAYS days, indexed by epoch day
+    private final DayBucket[] days = new DayBucket[RING_DAYS];
+    // Running totals per user id over each period's window of day buckets
+    private final Map<LeaderboardPeriod, Window> windows = new EnumMap<>(LeaderboardPeriod.class);
+    private LocalDate today;
+
+    // Bumped whenever a period's totals change
+    private final Map<LeaderboardPeriod, AtomicLong> versions = new EnumMap<>(
+            LeaderboardPeriod.class);
+
+    public LeaderboardEngine(
+            UserRepository userRepository,
+            DailyTripRollup dailyTripRollup,
+            TripCommitGate tripCommitGate) {
+        this.userRepository = userRepository;
+        this.dailyTripRollup = dailyTripRollup;
+        this.tripCommitGate = tripCommitGate;
+        for (LeaderboardPeriod period : LeaderboardPeriod.values()) {
+            versions.put(period, new AtomicLong());
+        }
+        this.today = dailyTripRollup.today();
+        for (LeaderboardPeriod period : LeaderboardPeriod.values()) {
+            if (period != LeaderboardPeriod.LIFETIME) {
+                Window window = new Window();
+                window.start = periodStart(period, today);
+                windows.put(period, window);
+            }
+        }
+    }
+
+    /**
+     * Gets the current version of a period's leaderboards. It increases
+     * whenever any of their values may have changed.
+     */
+    public long version(LeaderboardPeriod period) {
+        return versions.get(period).get();
+    }
+
+    private void bump(LeaderboardPeriod period) {
+        versions.get(period).incrementAndGet();
+    }
+
+    /**
+     * Gets one page of a leaderboard, best first, from the live rankings.
+     * It takes logarithmic time in the number of users per row returned.
+     *
+     * @param limit  the maximum number of rows to return
+     * @param cursor the nextCursor of the previous page, or null for the top
+     */
+    public synchronized Page getLeaderboard(
+            LeaderboardMetric metric,
+            LeaderboardPeriod period,
+            int limit,
+            String cursor) {
+        RankedSet<UserRepository.LeaderboardRow> rows = board(period).ranked.get(metric);
+        int start = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            // Keyset pagination: continue after the (value, username) of the
+            // last row of the previous page, even if rows moved in between
+            start = rows.countUpTo(decodeCursor(cursor));
+        }
+        int end = Math.min(rows.size(), start + limit);
+        List<UserRepository.LeaderboardRow> page = new ArrayList<>(Math.max(0, end - start));
+        for (int i = start; i < end; i++) {
+            page.add(rows.get(i));
+        }
+        String nextCursor = end < rows.size() ? encodeCursor(rows.get(end - 1)) : null;
+        // Writers bump the version under the same lock, so it matches the rows
+        return new Page(List.copyOf(page), nextCursor, version(period));
+    }
+
+    /**
+     * Finds a user's position on a leaderboard in the live rankings, which
+     * takes logarithmic time in the number of users plus the neighbours.
+     *
+     * @param neighbours the number of rows to include above and below
+     * @return empty when the user is not on the leaderboard
+     */
+    public synchronized Optional<Rank> getRank(
+            LeaderboardMetric metric,
+            LeaderboardPeriod period,
+            long userId,
+            int neighbours) {
+        Board board = board(period);
+        UserRepository.LeaderboardRow row = row(board.users.get(userId), metric);
+        if (row == null) {
+            return Optional.empty();
+        }
+        RankedSet<UserRepository.LeaderboardRow> rows = board.ranked.get(metric);
+        int index = rows.indexOf(row);
+        if (index < 0) {
+            return Optional.empty();
+        }
+        int from = Math.max(0, index - neighbours);
+        int to = Math.min(rows.size(), index + neighbours + 1);
+        List<UserRepository.LeaderboardRow> around = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            around.add(rows.get(i));
+        }
+        return Optional.of(new Rank(
+                index + 1,
+                rows.size(),
+                rows.get(index),
+                from + 1,
+                List.copyOf(around)));
+    }
+
+    /** Gets a period's board, first dropping the days that left its window. */
+    private Board board(LeaderboardPeriod period) {
+        if (period == LeaderboardPeriod.LIFETIME) {
+            return lifetime;
+        }
+        advanceTo(dailyTripRollup.today());
+        return windows.get(period);
+    }
+
+    private static String encodeCursor(UserRepository.LeaderboardRow row) {
+        String key = Double.toString(row.value()) + "\n" + row.username();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static UserRepository.LeaderboardRow decodeCursor(String cursor) {
+        try {
+            String key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = key.indexOf('\n');
+            return new UserRepository.LeaderboardRow(
+                    key.substring(separator + 1),
+                    null,
+                    null,
+                    Double.parseDouble(key.substring(0, separator)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid leaderboard cursor");
+        }
+    }
+
+    static LocalDate periodStart(LeaderboardPeriod period, LocalDate today) {
+        return switch (period) {
+            case LIFETIME -> null;
+            case PAST_YEAR -> today.minusYears(1).plusDays(1);
+            case PAST_MONTH -> today.minusMonths(1).plusDays(1);
+            case PAST_WEEK -> today.minusWeeks(1).plusDays(1);
+        };
+    }
+
+    /** Returns null when the user is not on the metric's leaderboard. */
+    private static UserRepository.LeaderboardRow row(UserTotals user, LeaderboardMetric metric) {
+        if (user == null || user.trips() <= 0) {
+            return null;
+        }
+        Double value = user.value(metric);
+        if (value == null) {
+            return null;
+        }
+        return new UserRepository.LeaderboardRow(
+                user.username(),
+                user.firstName(),
+                user.lastName(),
+                value);
+    }
+
+    static boolean ascending(LeaderboardMetric metric) {
+        return metric == LeaderboardMetric.TOTAL_EMISSIONS
+                || metric == LeaderboardMetric.AVERAGE_CO2E_PER_KILOMETER;
+    }
+
+    static Comparator<UserRepository.LeaderboardRow> order(LeaderboardMetric metric) {
+        Comparator<UserRepository.LeaderboardRow> byValue = Comparator
+                .comparingDouble(UserRepository.LeaderboardRow::value);
+        if (!ascending(metric)) {
+            byValue = byValue.reversed();
+        }
+        return byValue.thenComparing(UserRepository.LeaderboardRow::username);
+    }
+
+    // Applied after commit, so rolled back trips never reach the totals
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTripChanged(TripChangedEvent event) {
+        synchronized (this) {
+            if (event.before() != null) {
+                apply(event.before(), -1);
+            }
+            if (event.after() != null) {
+                apply(event.after(), 1);
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTripsImported(TripsImportedEvent event) {
+        synchronized (this) {
+            for (TripFigures trip : event.trips()) {
+                apply(trip, 1);
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserTripsRemoved(UserTripsRemovedEvent event) {
+        synchronized (this) {
+            UserTotals names = lifetime.users.get(event.userId());
+            if (names == null) {
+                return;
+            }
+            lifetime.add(event.userId(), UserTotals.of(names, event.total()), -1);
+            bump(LeaderboardPeriod.LIFETIME);
+
+            advanceTo(dailyTripRollup.today());
+            for (Map.Entry<LocalDate, UserTripsRemovedEvent.TripSums> entry : event.days().entrySet()) {
+                LocalDate day = entry.getKey();
+                DayBucket bucket = bucket(day, false);
+                if (bucket == null) {
+                    continue;
+                }
+                UserTotals change = UserTotals.of(names, entry.getValue());
+                add(bucket.users(), event.userId(), change, -1);
+                for (Map.Entry<LeaderboardPeriod, Window> window : windows.entrySet()) {
+                    if (!day.isBefore(window.getValue().start)) {
+                        window.getValue().add(event.userId(), change, -1);
+                        bump(window.getKey());
+                    }
+                }
+            }
+        }
+    }
+
+    private void apply(TripFigures trip, int sign) {
+        if (trip.userId() == null) {
+            return;
+        }
+        UserTotals current = lifetime.users.get(trip.userId());
+        if (current == null) {
+            User user = userRepository.findById(trip.userId()).orElse(null);
+            if (user == null) {
+                return;
+            }
+            current = UserTotals.empty(user);
+        }
+        lifetime.put(trip.userId(), current.plus(trip, sign));
+        bump(LeaderboardPeriod.LIFETIME);
+
+        if (trip.createdAt() == null) {
+            return;
+        }
+        advanceTo(dailyTripRollup.today());
+        LocalDate day = dailyTripRollup.dayOf(trip.createdAt());
+        DayBucket bucket = bucket(day, true);
+        if (bucket == null) {
+            return;
+        }
+        UserTotals blank = current.blank();
+        add(bucket.users(), trip.userId(), blank.plus(trip, sign), 1);
+        for (Map.Entry<LeaderboardPeriod, Window> window : windows.entrySet()) {
+            if (!day.isBefore(window.getValue().start)) {
+                window.getValue().add(trip.userId(), blank.plus(trip, sign), 1);
+                bump(window.getKey());
+            }
+        }
+    }
+
+    private static void add(Map<Long, UserTotals> users, long userId, UserTotals change, int sign) {
+        UserTotals updated = users.getOrDefault(userId, change.blank()).plus(change, sign);
+        if (updated.trips() > 0) {
+            users.put(userId, updated);
+        } else {
+            users.remove(userId);
+        }
+    }
+
+    /**
+     * Gets the bucket for a day in the ring, or null if the day is outside
+     * it. A slot still holding a day that has left the ring is reused.
+     */
+    private DayBucket bucket(LocalDate day, boolean create) {
+        if (day.isAfter(today) || !day.isAfter(today.minusDays(RING_DAYS))) {
+            return null;
+        }
+        int slot = (int) Math.floorMod(day.toEpochDay(), (long) RING_DAYS);
+        DayBucket bucket = days[slot];
+        if (bucket == null || !bucket.day().equals(day)) {
+            if (!create) {
+                return null;
+            }
+            bucket = new DayBucket(day, new HashMap<>());
+            days[slot] = bucket;
+        }
+        return bucket;
+    }
+
+    /**
+     * Moves the period windows forward to a new day. Each day leaving a
+     * window is subtracted from its running totals, so a rollover only
+     * touches the users active on the dropped days.
+     */
+    private void advanceTo(LocalDate newToday) {
+        if (!newToday.isAfter(today)) {
+            return;
+        }
+        today = newToday;
+        for (Map.Entry<LeaderboardPeriod, Window> entry : windows.entrySet()) {
+            Window window = entry.getValue();
+            LocalDate newStart = periodStart(entry.getKey(), newToday);
+            if (ChronoUnit.DAYS.between(window.start, newStart) >= RING_DAYS) {
+                window.clear();
+            } else {
+                for (LocalDate day = window.start; day.isBefore(newStart); day = day.plusDays(1)) {
+                    DayBucket bucket = bucket(day, false);
+                    if (bucket != null) {
+                        for (Map.Entry<Long, UserTotals> user : bucket.users().entrySet()) {
+                            window.add(user.getKey(), user.getValue(), -1);
+                        }
+                    }
+                }
+            }
+            window.start = newStart;
+            bump(entry.getKey());
+        }
+    }
+
+    /**
+     * Drops the days that left the period windows at midnight, rather than
+     * on the first request of the day.
+     */
+    @Scheduled(cron = "0 0 0 * * *", zone = "${transport.zone:Europe/Oslo}")
+    public synchronized void rollOver() {
+        advanceTo(dailyTripRollup.today());
+    }
+
+    /**
+     * Replaces the in-memory totals with the totals in the database. Runs at
+     * startup, then periodically and after every rollup backfill, since the
+     * windows are loaded from the rollup.
+     */
+    @Scheduled(fixedDelayString = "${transport.leaderboard.reconcile-interval-ms:3600000}")
+    public void reconcile() {
+        int users = tripCommitGate.reload(this::loadTotals);
+        System.out.println("Leaderboard totals reconciled for " + users + " users");
+    }
+
+    // After commit, so the reload reads the rebuilt rollup
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRollupBackfilled(RollupBackfilledEvent event) {
+        reconcile();
+    }
+
+    private int loadTotals() {
+        synchronized (this) {
+            Map<Long, UserTotals> loaded = new HashMap<>();
+            for (UserRepository.UserTotalsRow row : userRepository.getUserTotals()) {
+                loaded.put(row.userId(), UserTotals.of(row));
+            }
+            lifetime.clear();
+            loaded.forEach(lifetime::put);
+
+            today = dailyTripRollup.today();
+            Arrays.fill(days, null);
+            for (Map.Entry<LeaderboardPeriod, Window> entry : windows.entrySet()) {
+                entry.getValue().start = periodStart(entry.getKey(), today);
+                entry.getValue().clear();
+            }
+            LocalDate oldest = today.minusDays(RING_DAYS - 1);
+            for (UserDailyTripStats row : dailyTripRollup.getDailyStatsSince(oldest)) {
+                UserTotals names = lifetime.users.get(row.getUserId());
+                DayBucket bucket = bucket(row.getDay(), true);
+                if (names == null || bucket == null || row.getTrips() <= 0) {
+                    continue;
+                }
+                UserTotals day = UserTotals.of(names, row);
+                bucket.users().put(row.getUserId(), day);
+                for (Window window : windows.values()) {
+                    if (!row.getDay().isBefore(window.start)) {
+                        window.add(row.getUserId(), day, 1);
+                    }
+                }
+            }
+            for (LeaderboardPeriod period : LeaderboardPeriod.values()) {
+                bump(period);
+            }
+            return lifetime.users.size();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.demo.service;
+
+import com.google.maps.GeoApiContext;
+import com.google.maps.OkHttpRequestHandler;
+import jakarta.annotation.PreDestroy;
+import java.util.concurrent.TimeUnit;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Shared outbound client for the Google Maps APIs.
+ *
+ * The {@link GeoApiContext} owns an HTTP connection pool, dispatcher threads
+ * and TLS sessions, so it is created once and reused by every request instead
+ * of being built and shut down per call.
+ */
+@Component
+public class MapsApiClient {
+
+    private final GeoApiContext context;
+    private final ConnectionPool connectionPool;
+    private final Dispatcher dispatcher;
+    // Shares the context's pool, dispatcher and timeouts
+    private final OkHttpClient httpClient;
+    // Not readable back from the pool
+    private final int maxIdleConnections;
+    private final long keepAliveSeconds;
+
+    public MapsApiClient(
+            @Value("${GOOGLE_MAPS_API_KEY:}") String apiKey,
+            @Value("${google.maps.pool.max-idle-connections:16}") int maxIdleConnections,
+            @Value("${google.maps.pool.keep-alive-seconds:300}") long keepAliveSeconds,
+            @Value("${google.maps.pool.max-requests:64}") int maxRequests,
+            @Value("${google.maps.pool.max-requests-per-host:32}") int maxRequestsPerHost,
+            @Value("${google.maps.connect-timeout-ms:2000}") long connectTimeoutMs,
+            @Value("${google.maps.read-timeout-ms:5000}") long readTimeoutMs,
+            @Value("${google.maps.retry-timeout-ms:5000}") long retryTimeoutMs) {
+        this.maxIdleConnections = maxIdleConnections;
+        this.keepAliveSeconds = keepAliveSeconds;
+        this.connectionPool = new ConnectionPool(
+                maxIdleConnections,
+                keepAliveSeconds,
+                TimeUnit.SECONDS);
+
+        OkHttpRequestHandler.Builder handler = new OkHttpRequestHandler.Builder();
+        handler.okHttpClientBuilder().connectionPool(connectionPool);
+        // The handler installs its own rate limiting dispatcher, which is only
+        // reachable through a client built from the same builder.
+        this.dispatcher = handler.okHttpClientBuilder().build().dispatcher();
+        this.dispatcher.setMaxRequests(maxRequests);
+        this.dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+
+        this.context = new GeoApiContext.Builder(handler)
+                .apiKey(apiKey == null || apiKey.isBlank() ? null : apiKey)
+                .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .writeTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .retryTimeout(retryTimeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+        this.httpClient = handler.okHttpClientBuilder().build();
+    }
+
+    public GeoApiContext context() {
+        return context;
+    }
+
+    public record PoolStats(
+            // Configuration, as applied to the HTTP client
+            int maxIdleConnections,
+            long keepAliveSeconds,
+            int maxRequests,
+            int maxRequestsPerHost,
+            int connectTimeoutMs,
+            int readTimeoutMs,
+            // Usage
+            int connectionCount,
+            int idleConnectionCount,
+            int runningCalls,
+            int queuedCalls) {
+    }
+
+    public PoolStats poolStats() {
+        return new PoolStats(
+                maxIdleConnections,
+                keepAliveSeconds,
+                dispatcher.getMaxRequests(),
+                dispatcher.getMaxRequestsPerHost(),
+                httpClient.connectTimeoutMillis(),
+                httpClient.readTimeoutMillis(),
+                connectionPool.connectionCount(),
+                connectionPool.idleConnectionCount(),
+                dispatcher.runningCallsCount(),
+                dispatcher.queuedCallsCount());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        context.shutdown();
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.demo.service;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Source of address suggestions for autocomplete.
+ */
+public interface PlacesProvider {
+    /**
+     * Gets addresses matching a partial query.
+     *
+     * @param query        what the user has typed so far
+     * @param sessionToken groups the requests of one autocomplete session
+     * @return the suggested addresses
+     */
+    List<String> getAddressAutocomplete(String query, UUID sessionToken);
+}
@@ -0,0 +1,167 @@
+package com.example.demo.service;
+
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A sorted set that can also find an element's index and the element at an
+ * index, all in logarithmic time. It is a treap whose nodes count the
+ * elements below them.
+ *
+ * Not thread safe.
+ */
+final class RankedSet<T> {
+
+    private static final class Node<T> {
+        final T value;
+        final int priority = ThreadLocalRandom.current().nextInt();
+        Node<T> left;
+        Node<T> right;
+        int size = 1;
+
+        Node(T value) {
+            this.value = value;
+        }
+    }
+
+    private final Comparator<? super T> order;
+    private Node<T> root;
+
+    RankedSet(Comparator<? super T> order) {
+        this.order = order;
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    void clear() {
+        root = null;
+    }
+
+    /** Adds a value, replacing an equal one. */
+    void add(T value) {
+        remove(value);
+        Node<T>[] parts = split(root, value);
+        root = merge(merge(parts[0], new Node<>(value)), parts[1]);
+    }
+
+    void remove(T value) {
+        root = remove(root, value);
+    }
+
+    /** Gets the 0-based index of a value, or -1 if it is not in the set. */
+    int indexOf(T value) {
+        int index = 0;
+        Node<T> node = root;
+        while (node != null) {
+            int c = order.compare(value, node.value);
+            if (c == 0) {
+                return index + size(node.left);
+            }
+            if (c < 0) {
+                node = node.left;
+            } else {
+                index += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Counts the values ordered before the given one, plus the value itself
+     * if it is in the set. That is the index to continue from after it.
+     */
+    int countUpTo(T value) {
+        int count = 0;
+        Node<T> node = root;
+        while (node != null) {
+            if (order.compare(value, node.value) < 0) {
+                node = node.left;
+            } else {
+                count += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return count;
+    }
+
+    /** Gets the value at a 0-based index. */
+    T get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        Node<T> node = root;
+        while (true) {
+            int left = size(node.left);
+            if (index == left) {
+                return node.value;
+            }
+            if (index < left) {
+                node = node.left;
+            } else {
+                index -= left + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    private Node<T> remove(Node<T> node, T value) {
+        if (node == null) {
+            return null;
+        }
+        int c = order.compare(value, node.value);
+        if (c == 0) {
+            return merge(node.left, node.right);
+        }
+        if (c < 0) {
+            node.left = remove(node.left, value);
+        } else {
+            node.right = remove(node.right, value);
+        }
+        node.size = 1 + size(node.left) + size(node.right);
+        return node;
+    }
+
+    /** Splits into the values before the given one and the values after it. */
+    @SuppressWarnings("unchecked")
+    private Node<T>[] split(Node<T> node, T value) {
+        if (node == null) {
+            return new Node[] { null, null };
+        }
+        if (order.compare(node.value, value) < 0) {
+            Node<T>[] parts = split(node.right, value);
+            node.right = parts[0];
+            node.size = 1 + size(node.left) + size(node.right);
+            parts[0] = node;
+            return parts;
+        }
+        Node<T>[] parts = split(node.left, value);
+        node.left = parts[1];
+        node.size = 1 + size(node.left) + size(node.right);
+        parts[1] = node;
+        return parts;
+    }
+
+    private static <T> Node<T> merge(Node<T> left, Node<T> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.size = 1 + size(left.left) + size(left.right);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.size = 1 + size(right.left) + size(right.right);
+        return right;
+    }
+
+    private static int size(Node<?> node) {
+        return node != null ? node.size : 0;
+    }
+}
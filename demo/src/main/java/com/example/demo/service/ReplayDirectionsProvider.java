@@ -0,0 +1,131 @@
+package com.example.demo.service;
+
+import com.google.maps.model.DirectionsResult;
+import com.google.maps.model.TravelMode;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Offline stand-in for the Google Maps APIs.
+ *
+ * Replays directions recorded by {@link GoogleMapsProvider} from disk, after
+ * a synthetic delay, so throughput, caching and concurrency can be measured
+ * without network access or an API key.
+ */
+@Component
+@ConditionalOnProperty(name = "transport.provider", havingValue = "replay")
+public class ReplayDirectionsProvider implements DirectionsProvider, PlacesProvider {
+
+    private static final int MAX_SUGGESTIONS = 5;
+
+    private final Map<DirectionsKey, DirectionsResult> fixtures = new HashMap<>();
+    private final Map<TravelMode, List<DirectionsResult>> fixturesByMode = new EnumMap<>(TravelMode.class);
+    private final Set<String> addresses = new LinkedHashSet<>();
+    private final long latencyMs;
+    private final long jitterMs;
+    private final boolean fallback;
+
+    public ReplayDirectionsProvider(
+            @Value("${transport.replay.fixtures-dir:fixtures/directions}") String fixturesDirectory,
+            @Value("${transport.replay.latency-ms:150}") long latencyMs,
+            @Value("${transport.replay.jitter-ms:100}") long jitterMs,
+            @Value("${transport.replay.fallback:true}") boolean fallback) throws IOException {
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        this.fallback = fallback;
+
+        Path directory = Path.of(fixturesDirectory);
+        if (Files.isDirectory(directory)) {
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(directory)) {
+                files = listing.filter(file -> file.toString().endsWith(".json")).toList();
+            }
+            for (Path file : files) {
+                add(DirectionsFixtures.read(file));
+            }
+        }
+        System.out.println("Loaded " + fixtures.size() + " directions fixtures from " + directory);
+    }
+
+    private void add(DirectionsFixtures.Fixture fixture) {
+        if (fixture == null || fixture.result == null || fixture.mode == null) {
+            return;
+        }
+        fixtures.put(
+                DirectionsKey.of(fixture.origin, fixture.destination, fixture.mode),
+                fixture.result);
+        fixturesByMode
+                .computeIfAbsent(fixture.mode, mode -> new ArrayList<>())
+                .add(fixture.result);
+        addresses.add(fixture.origin);
+        addresses.add(fixture.destination);
+    }
+
+    @Override
+    public DirectionsResult getDirections(
+            String origin,
+            String destination,
+            TravelMode mode) {
+        simulateLatency();
+        DirectionsKey key = DirectionsKey.of(origin, destination, mode);
+        DirectionsResult result = fixtures.get(key);
+        if (result != null || !fallback) {
+            return result;
+        }
+
+        // Unknown route: answer with a recorded route for the same mode, picked
+        // deterministically so repeated requests see the same result
+        List<DirectionsResult> candidates = fixturesByMode.get(mode);
+        if (candidates == null || candidates.isEmpty()) {
+            return null;
+        }
+        return candidates.get(Math.floorMod(key.hashCode(), candidates.size()));
+    }
+
+    @Override
+    public List<String> getAddressAutocomplete(
+            String query,
+            UUID sessionToken) {
+        simulateLatency();
+        String normalizedQuery = DirectionsKey.normalize(query);
+        List<String> suggestions = new ArrayList<>();
+        for (String address : addresses) {
+            if (DirectionsKey.normalize(address).contains(normalizedQuery)) {
+                suggestions.add(address);
+                if (suggestions.size() == MAX_SUGGESTIONS) {
+                    break;
+                }
+            }
+        }
+        return suggestions;
+    }
+
+    private void simulateLatency() {
+        long delay = latencyMs;
+        if (jitterMs > 0) {
+            delay += ThreadLocalRandom.current().nextLong(jitterMs + 1);
+        }
+        if (delay <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
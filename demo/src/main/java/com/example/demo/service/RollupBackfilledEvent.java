@@ -0,0 +1,8 @@
+package com.example.demo.service;
+
+/**
+ * Published when {@link DailyTripRollup#backfill()} has rebuilt the rollup,
+ * so projections loaded from the rollup can reload.
+ */
+public record RollupBackfilledEvent(int rows) {
+}
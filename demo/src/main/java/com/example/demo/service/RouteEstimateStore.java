@@ -0,0 +1,96 @@
+package com.example.demo.service;
+
+import com.example.demo.model.RouteEstimate;
+import com.example.demo.repository.RouteEstimateRepository;
+import com.google.maps.model.TravelMode;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Persistent store of route estimates, so trip estimates survive restarts and
+ * deploys. Entries are looked up on demand and expired rows are removed in the
+ * background. An entry computed with other emission factors than the current
+ * ones counts as a miss, so factor edits are not hidden behind stored figures.
+ *
+ * Entries expire with the {@link DirectionsCache} TTL of their travel mode.
+ * The store is only read after a cache miss, so a longer TTL here would keep
+ * serving e.g. transit estimates after the cache had let them go stale.
+ */
+@Component
+public class RouteEstimateStore {
+
+    private final RouteEstimateRepository routeEstimateRepository;
+    private final DirectionsCache directionsCache;
+
+    public RouteEstimateStore(
+            RouteEstimateRepository routeEstimateRepository,
+            DirectionsCache directionsCache) {
+        this.routeEstimateRepository = routeEstimateRepository;
+        this.directionsCache = directionsCache;
+    }
+
+    public Optional<RouteEstimate> find(DirectionsKey key, long factorGeneration) {
+        return routeEstimateRepository
+                .findByOriginAndDestinationAndTravelMode(
+                        key.origin(),
+                        key.destination(),
+                        modeName(key.mode()))
+                .filter(estimate -> estimate.getExpiresAt().isAfter(LocalDateTime.now()))
+                .filter(estimate -> estimate.getFactorGeneration() != null
+                        && estimate.getFactorGeneration() == factorGeneration);
+    }
+
+    public void save(
+            DirectionsKey key,
+            double distanceKm,
+            long durationSeconds,
+            double emissionsCO2eKg,
+            long factorGeneration) {
+        Duration ttl = directionsCache.ttl(key.mode());
+        if (ttl.isZero() || ttl.isNegative()) {
+            return;
+        }
+        LocalDateTime expiresAt = LocalDateTime.now().plus(ttl);
+
+        RouteEstimate estimate = routeEstimateRepository
+                .findByOriginAndDestinationAndTravelMode(
+                        key.origin(),
+                        key.destination(),
+                        modeName(key.mode()))
+                .orElseGet(() -> new RouteEstimate(
+                        key.origin(),
+                        key.destination(),
+                        modeName(key.mode()),
+                        distanceKm,
+                        durationSeconds,
+                        emissionsCO2eKg,
+                        factorGeneration,
+                        expiresAt));
+        estimate.setDistanceKm(distanceKm);
+        estimate.setDurationSeconds(durationSeconds);
+        estimate.setEmissionsCO2eKg(emissionsCO2eKg);
+        estimate.setFactorGeneration(factorGeneration);
+        estimate.setExpiresAt(expiresAt);
+        try {
+            routeEstimateRepository.save(estimate);
+        } catch (DataIntegrityViolationException e) {
+            // Another request stored the same route first
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${transport.route-store.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        int removed = routeEstimateRepository.deleteExpired(LocalDateTime.now());
+        if (removed > 0) {
+            System.out.println("Purged " + removed + " expired route estimates");
+        }
+    }
+
+    private static String modeName(TravelMode mode) {
+        return mode.name().toLowerCase();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.demo.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent calls for the same key.
+ *
+ * The first caller for a key starts the load, and every caller that arrives
+ * while it is running waits for the same result (or the same failure) instead
+ * of starting its own.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Executor executor;
+
+    public SingleFlight(Executor executor) {
+        this.executor = executor;
+    }
+
+    public V execute(K key, Supplier<V> loader, long timeoutMs) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        CompletableFuture<V> future = existing != null ? existing : created;
+        if (existing == null) {
+            // Load on its own thread, so a waiter giving up does not abort it
+            executor.execute(() -> {
+                V value;
+                try {
+                    value = loader.get();
+                } catch (Throwable e) {
+                    inFlight.remove(key, created);
+                    created.completeExceptionally(e);
+                    return;
+                }
+                inFlight.remove(key, created);
+                created.complete(value);
+            });
+        }
+
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Timed out waiting for " + key, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for " + key, e);
+        }
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+}
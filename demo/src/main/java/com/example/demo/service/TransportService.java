@@ -1,5 +1,6 @@
 package com.example.demo.service;
 
+import com.example.demo.model.RouteEstimate;
 import com.example.demo.model.Trip;
 import com.example.demo.model.User;
 import com.example.demo.model.Vehicle;
@@ -7,27 +8,34 @@ import com.example.demo.model.VehicleType;
 import com.example.demo.repository.TripRepository;
 import com.example.demo.repository.UserRepository;
 import com.example.demo.repository.VehicleRepository;
-import com.google.maps.DirectionsApi;
-import com.google.maps.DirectionsApiRequest;
-import com.google.maps.GeoApiContext;
-import com.google.maps.PlaceAutocompleteRequest;
-import com.google.maps.PlacesApi;
-import com.google.maps.errors.ZeroResultsException;
-import com.google.maps.model.AutocompletePrediction;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.google.maps.model.DirectionsLeg;
 import com.google.maps.model.DirectionsResult;
 import com.google.maps.model.DirectionsRoute;
 import com.google.maps.model.DirectionsStep;
-import com.google.maps.model.TransitMode;
 import com.google.maps.model.TravelMode;
+import jakarta.annotation.PreDestroy;
 import java.time.Duration;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
-import org.springframework.cache.annotation.Cacheable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -36,14 +44,82 @@ public class TransportService {
     private final UserRepository userRepository;
     private final TripRepository tripRepository;
     private final VehicleRepository vehicleRepository;
+    private final DirectionsProvider directionsProvider;
+    private final PlacesProvider placesProvider;
+    private final AddressIndex addressIndex;
+    private final DirectionsCache directionsCache;
+    private final RouteEstimateStore routeEstimateStore;
+    private final EmissionFactorEngine emissionFactors;
+    private final LeaderboardEngine leaderboardEngine;
+    private final DailyTripRollup dailyTripRollup;
+    private final DataVersions dataVersions;
+    private final TripService tripService;
+    private final UserStatisticsService userStatisticsService;
+
+    private static final int DEFAULT_LEADERBOARD_LIMIT = 100;
+    private static final int MAX_LEADERBOARD_LIMIT = 1000;
+    private static final int DEFAULT_RANK_NEIGHBOURS = 2;
+    private static final int MAX_RANK_NEIGHBOURS = 50;
+
+    private static final TravelMode[] ESTIMATE_MODES = {
+            TravelMode.WALKING,
+            TravelMode.BICYCLING,
+            TravelMode.TRANSIT,
+            TravelMode.DRIVING,
+    };
+
+    // Directions calls are blocking I/O, so one virtual thread per call is cheap
+    private final ExecutorService estimateExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final SingleFlight<DirectionsKey, DirectionsResult> directionsFlight = new SingleFlight<>(
+            estimateExecutor);
+    private final boolean concurrentEstimates;
+    private final long directionsTimeoutMs;
+    private final int maxAddressSuggestions;
+    private final int minLocalAddressSuggestions;
+    private final int maxBatchPairs;
+    private final int maxBatchConcurrency;
 
     public TransportService(
             UserRepository userRepository,
             TripRepository tripRepository,
-            VehicleRepository vehicleRepository) {
+            VehicleRepository vehicleRepository,
+            DirectionsProvider directionsProvider,
+            PlacesProvider placesProvider,
+            AddressIndex addressIndex,
+            DirectionsCache directionsCache,
+            RouteEstimateStore routeEstimateStore,
+            EmissionFactorEngine emissionFactors,
+            LeaderboardEngine leaderboardEngine,
+            DailyTripRollup dailyTripRollup,
+            DataVersions dataVersions,
+            TripService tripService,
+            UserStatisticsService userStatisticsService,
+            @Value("${transport.directions.concurrent:true}") boolean concurrentEstimates,
+            @Value("${transport.directions.timeout-ms:5000}") long directionsTimeoutMs,
+            @Value("${transport.addresses.max-suggestions:5}") int maxAddressSuggestions,
+            @Value("${transport.addresses.min-local-suggestions:3}") int minLocalAddressSuggestions,
+            @Value("${transport.batch.max-pairs:1000}") int maxBatchPairs,
+            @Value("${transport.batch.max-concurrency:8}") int maxBatchConcurrency) {
         this.userRepository = userRepository;
         this.tripRepository = tripRepository;
         this.vehicleRepository = vehicleRepository;
+        this.directionsProvider = directionsProvider;
+        this.placesProvider = placesProvider;
+        this.addressIndex = addressIndex;
+        this.directionsCache = directionsCache;
+        this.routeEstimateStore = routeEstimateStore;
+        this.emissionFactors = emissionFactors;
+        this.leaderboardEngine = leaderboardEngine;
+        this.dailyTripRollup = dailyTripRollup;
+        this.dataVersions = dataVersions;
+        this.tripService = tripService;
+        this.userStatisticsService = userStatisticsService;
+        this.concurrentEstimates = concurrentEstimates;
+        this.directionsTimeoutMs = directionsTimeoutMs;
+        this.maxAddressSuggestions = maxAddressSuggestions;
+        this.minLocalAddressSuggestions = minLocalAddressSuggestions;
+        this.maxBatchPairs = maxBatchPairs;
+        this.maxBatchConcurrency = maxBatchConcurrency;
     }
 
     public enum LeaderboardMetric {
@@ -65,58 +141,109 @@ public class TransportService {
     public record Leaderboard(
         LeaderboardMetric metric,
         LeaderboardPeriod period,
-        List<UserRepository.LeaderboardRow> rows
+        List<UserRepository.LeaderboardRow> rows,
+        // Pass as cursor to get the next page, null on the last page
+        String nextCursor,
+        @JsonIgnore String eTag
     ) {}
 
+    private LeaderboardPeriod periodOrDefault(LeaderboardPeriod period) {
+        return period != null ? period : LeaderboardPeriod.LIFETIME;
+    }
+
+    private String leaderboardETag(LeaderboardPeriod period, long version) {
+        // Period windows move at midnight, so the day is part of the tag
+        return dataVersions.tag(
+            "lb-" + period + "-" + dailyTripRollup.today().toEpochDay(),
+            version
+        );
+    }
+
+    /**
+     * Gets the ETag of the current leaderboards for a period, without
+     * reading them.
+     */
+    public String getLeaderboardETag(LeaderboardPeriod period) {
+        period = periodOrDefault(period);
+        return leaderboardETag(period, leaderboardEngine.version(period));
+    }
+
+    /**
+     * Gets one page of a leaderboard.
+     *
+     * @param limit  the page size, defaults to 100 and is capped at 1000
+     * @param cursor the nextCursor of the previous page, or null
+     */
     public Leaderboard getLeaderboard(
         LeaderboardMetric metric,
-        LeaderboardPeriod period
+        LeaderboardPeriod period,
+        Integer limit,
+        String cursor
     ) {
         if (metric == null) {
             metric = LeaderboardMetric.TOTAL_EMISSIONS;
         }
-        if (period == null) {
-            period = LeaderboardPeriod.LIFETIME;
-        }
-        LocalDateTime since = LocalDateTime.now();
-        switch (period) {
-            case LIFETIME:
-                // TODO: ugly
-                since = since.minusYears(100);
-                break;
-            case PAST_YEAR:
-                since = since.minusYears(1);
-                break;
-            case PAST_MONTH:
-                since = since.minusMonths(1);
-                break;
-            case PAST_WEEK:
-                since = since.minusWeeks(1);
-                break;
+        period = periodOrDefault(period);
+        if (limit == null) {
+            limit = DEFAULT_LEADERBOARD_LIMIT;
         }
-        // Date since = Date.valueOf(periodAgo);
+        limit = Math.max(1, Math.min(limit, MAX_LEADERBOARD_LIMIT));
+        LeaderboardEngine.Page page = leaderboardEngine.getLeaderboard(
+            metric,
+            period,
+            limit,
+            cursor
+        );
+        return new Leaderboard(
+            metric,
+            period,
+            page.rows(),
+            page.nextCursor(),
+            leaderboardETag(period, page.version())
+        );
+    }
 
-        List<UserRepository.LeaderboardRow> rows = null;
-        switch (metric) {
-            case TOTAL_EMISSIONS:
-                rows = userRepository.getLeaderboardTotalEmissions(since);
-                break;
-            case TOTAL_DISTANCE_KILOMETERS:
-                rows = userRepository.getLeaderboardTotalDistance(since);
-                break;
-            case TOTAL_DURATION_SECONDS:
-                rows = userRepository.getLeaderboardTotalDuration(since);
-                break;
-            case AVERAGE_CO2E_PER_KILOMETER:
-                rows = userRepository.getLeaderboardAverageEmissionsPerKm(
-                    since
-                );
-                break;
-            case TOTAL_SAVED_EMISSIONS:
-                rows = userRepository.getLeaderboardTotalSavedEmissions(since);
-                break;
-        }
-        return new Leaderboard(metric, period, rows);
+    public record LeaderboardRank(
+        LeaderboardMetric metric,
+        LeaderboardPeriod period,
+        int rank,
+        int total,
+        UserRepository.LeaderboardRow row,
+        // Rank of the first row in neighbours
+        int neighboursFrom,
+        List<UserRepository.LeaderboardRow> neighbours
+    ) {}
+
+    /**
+     * Gets a user's rank on a leaderboard and the rows around it, or empty
+     * if the user has no trips in the period.
+     */
+    public Optional<LeaderboardRank> getLeaderboardRank(
+        User user,
+        LeaderboardMetric metric,
+        LeaderboardPeriod period,
+        Integer neighbours
+    ) {
+        LeaderboardMetric rankMetric = metric != null
+            ? metric
+            : LeaderboardMetric.TOTAL_EMISSIONS;
+        LeaderboardPeriod rankPeriod = periodOrDefault(period);
+        int around = neighbours == null
+            ? DEFAULT_RANK_NEIGHBOURS
+            : Math.max(0, Math.min(neighbours, MAX_RANK_NEIGHBOURS));
+        return leaderboardEngine
+            .getRank(rankMetric, rankPeriod, user.getId(), around)
+            .map(rank ->
+                new LeaderboardRank(
+                    rankMetric,
+                    rankPeriod,
+                    rank.rank(),
+                    rank.total(),
+                    rank.row(),
+                    rank.neighboursFrom(),
+                    rank.neighbours()
+                )
+            );
     }
 
     public record Statistics(
@@ -132,26 +259,39 @@ public class TransportService {
             double totalCostNOK) {
     }
 
-    public Statistics getStatistics(User user) {
-        return new Statistics(
-                // Transport
-                tripRepository.countByUser(user),
-                tripRepository.sumTotalDistanceKmByUser(user),
-                tripRepository.sumTotalDurationSecondsByUser(user),
-                // Emissions
-                tripRepository.sumTotalEmissionsByUser(user),
-                tripRepository.sumSavedEmissionsByUser(user),
-                // Financial
-                // TODO: calculate
-                0.0,
-                0.0);
+    /**
+     * Gets the ETag of a user's statistics, without reading them.
+     */
+    public String getStatisticsETag(long userId) {
+        return dataVersions.userTag(userId);
+    }
+
+    public Statistics getStatistics(long userId) {
+        return userStatisticsService.getStatistics(userId);
     }
 
     public List<String> getAddressAutocomplete(
             String query,
             UUID sessionToken) {
-        var results = this.getAddressAutocompleteResults(query, sessionToken);
-        return results;
+        // Serve from the local index when it knows enough matching addresses
+        List<String> local = addressIndex.suggest(query, maxAddressSuggestions);
+        if (local.size() >= minLocalAddressSuggestions) {
+            return local;
+        }
+
+        var results = placesProvider.getAddressAutocomplete(query, sessionToken);
+        addressIndex.recordSuggestions(results);
+
+        List<String> merged = new ArrayList<>(local);
+        for (String address : results) {
+            if (merged.size() >= maxAddressSuggestions) {
+                break;
+            }
+            if (!merged.contains(address)) {
+                merged.add(address);
+            }
+        }
+        return merged;
     }
 
     public void addVehicle(
@@ -200,6 +340,39 @@ public class TransportService {
             String destination,
             String selectedMode,
             String selectedVehicleId) {
+        Trip trip = estimateTrip(user, origin, destination, selectedMode, selectedVehicleId);
+        System.out.println("adding trip");
+        tripService.saveTrip(trip);
+        recordAddresses(trip);
+        return trip;
+    }
+
+    /**
+     * Checks that exactly one of a mode or a vehicle is selected, and that
+     * the vehicle exists, without calling Google.
+     */
+    public void validateTripSelection(String selectedMode, String selectedVehicleId) {
+        if (selectedMode != null && selectedVehicleId != null) {
+            throw new IllegalArgumentException(
+                    "Cannot select both mode and vehicle");
+        } else if (selectedMode == null && selectedVehicleId == null) {
+            throw new IllegalArgumentException(
+                    "Must select either mode or vehicle");
+        } else if (selectedVehicleId != null
+                && !vehicleRepository.existsById(Long.parseLong(selectedVehicleId))) {
+            throw new IllegalArgumentException("Vehicle not found");
+        }
+    }
+
+    /**
+     * Builds a trip from estimates for all travel modes, without saving it.
+     */
+    public Trip estimateTrip(
+            User user,
+            String origin,
+            String destination,
+            String selectedMode,
+            String selectedVehicleId) {
         String mode = null;
         Vehicle vehicle = null;
         if (selectedMode != null && selectedVehicleId != null) {
@@ -227,9 +400,17 @@ public class TransportService {
         var estimate = alternatives.get(mode);
         var carEstimate = alternatives.get("driving");
 
+        // A mode whose directions failed or timed out may succeed on a retry,
+        // unlike a mode with no route
+        if (estimate == null && results.hasFailed(mode)) {
+            throw new IllegalStateException("Directions failed for selected mode");
+        }
         if (estimate == null) {
             throw new IllegalArgumentException("No estimate for selected mode");
         }
+        if (carEstimate == null && results.hasFailed("driving")) {
+            throw new IllegalStateException("Directions failed for driving mode");
+        }
         if (carEstimate == null) {
             throw new IllegalArgumentException("No estimate for driving mode");
         }
@@ -246,24 +427,40 @@ public class TransportService {
                 estimate.getDuration().getSeconds(),
                 estimate.getEmissionsCO2eKg(),
                 totalCO2eSaved);
-
-        System.out.println("adding trip");
-        tripRepository.save(trip);
         return trip;
     }
 
+    /**
+     * Adds a saved trip's addresses to the autocomplete index.
+     */
+    public void recordAddresses(Trip trip) {
+        addressIndex.recordUse(trip.getOrigin());
+        addressIndex.recordUse(trip.getDestination());
+    }
+
     public class TripEstimateResults {
 
         private Map<String, TripEstimate> alternatives;
+        // Modes that failed or timed out, as opposed to having no route
+        private Set<String> failedModes;
 
         public TripEstimateResults() {
             this.alternatives = new HashMap<>();
+            this.failedModes = new HashSet<>();
         }
 
         public void addAlternative(String mode, TripEstimate estimate) {
             alternatives.put(mode, estimate);
         }
 
+        public void addFailure(String mode) {
+            failedModes.add(mode);
+        }
+
+        public boolean hasFailed(String mode) {
+            return failedModes.contains(mode);
+        }
+
         public Map<String, TripEstimate> getAlternatives() {
             return alternatives;
         }
@@ -302,61 +499,290 @@ public class TransportService {
             String destination,
             Vehicle vehicle) {
         TripEstimateResults results = new TripEstimateResults();
-        TravelMode[] modes = {
-                TravelMode.WALKING,
-                TravelMode.BICYCLING,
-                TravelMode.TRANSIT,
-                TravelMode.DRIVING,
-        };
-        for (TravelMode mode : modes) {
-            DirectionsResult result = getDirections(origin, destination, mode);
-            if (result == null) {
-                continue;
+        if (!concurrentEstimates) {
+            for (TravelMode mode : ESTIMATE_MODES) {
+                TripEstimate estimate = estimateMode(origin, destination, mode, vehicle);
+                if (estimate != null) {
+                    results.addAlternative(mode.name().toLowerCase(), estimate);
+                }
             }
-            if (result.routes.length == 0) {
-                continue;
+            return results;
+        }
+
+        return collectTripEstimate(estimateModes(origin, destination, vehicle));
+    }
+
+    /**
+     * Starts estimating every travel mode and returns one pending estimate per
+     * mode, keyed by mode name. An estimate completes with null if the mode has
+     * no route, or exceptionally if it failed or missed its deadline.
+     */
+    public Map<String, CompletableFuture<TripEstimate>> estimateModes(
+            String origin,
+            String destination,
+            Vehicle vehicle) {
+        // Send all mode requests at once, so the total latency is close to the
+        // slowest single call instead of the sum of all of them.
+        Map<String, CompletableFuture<TripEstimate>> pending = new LinkedHashMap<>();
+        for (TravelMode mode : ESTIMATE_MODES) {
+            CompletableFuture<TripEstimate> estimate;
+            if (concurrentEstimates) {
+                estimate = CompletableFuture
+                        .supplyAsync(
+                                () -> estimateMode(origin, destination, mode, vehicle),
+                                estimateExecutor)
+                        .orTimeout(directionsTimeoutMs, TimeUnit.MILLISECONDS);
+            } else {
+                estimate = new CompletableFuture<>();
+                try {
+                    estimate.complete(estimateMode(origin, destination, mode, vehicle));
+                } catch (RuntimeException e) {
+                    estimate.completeExceptionally(e);
+                }
             }
+            pending.put(mode.name().toLowerCase(), estimate);
+        }
+        return pending;
+    }
 
-            // Find and select best route
-            TripEstimate bestRoute = null;
-            for (DirectionsRoute route : result.routes) {
-                Vehicle estimationVehicle = null;
-                if (vehicle != null) {
-                    if (vehicle.getType().toTravelMode() == mode) {
-                        estimationVehicle = vehicle;
-                    }
+    /**
+     * Waits for pending mode estimates and merges the ones that succeeded.
+     * Modes that failed or timed out are recorded as failures. Only fails if
+     * no mode produced an estimate.
+     */
+    public TripEstimateResults collectTripEstimate(
+            Map<String, CompletableFuture<TripEstimate>> pending) {
+        TripEstimateResults results = new TripEstimateResults();
+        RuntimeException failure = null;
+        for (Map.Entry<String, CompletableFuture<TripEstimate>> entry : pending.entrySet()) {
+            String mode = entry.getKey();
+            try {
+                TripEstimate estimate = entry.getValue().join();
+                if (estimate != null) {
+                    results.addAlternative(mode, estimate);
+                }
+            } catch (CompletionException e) {
+                results.addFailure(mode);
+                if (e.getCause() instanceof TimeoutException) {
+                    System.out.println("Directions timed out for mode: " + mode);
+                    continue;
+                }
+                System.out.println("Directions failed for mode: " + mode);
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException cause
+                            ? cause
+                            : new RuntimeException("Failed to fetch directions", e.getCause());
                 }
+            }
+        }
+        if (failure != null && results.getAlternatives().isEmpty()) {
+            throw failure;
+        }
+
+        return results;
+    }
+
+    public record TripPair(String origin, String destination) {}
+
+    public record BatchEstimate(
+            String origin,
+            String destination,
+            Map<String, TripEstimate> alternatives,
+            String error) {
+    }
+
+    /**
+     * Checks a batch request before any result is streamed, and resolves
+     * its vehicle.
+     *
+     * @return the vehicle, or null if none was selected
+     * @throws IllegalArgumentException if there are too many pairs or the
+     *                                  vehicle id is malformed
+     * @throws NoSuchElementException   if the vehicle is not found
+     */
+    public Vehicle prepareBatchTripEstimate(List<TripPair> pairs, String vehicleId) {
+        if (pairs.size() > maxBatchPairs) {
+            throw new IllegalArgumentException(
+                    "At most " + maxBatchPairs + " pairs per batch");
+        }
+        if (vehicleId == null) {
+            return null;
+        }
+        return vehicleRepository
+                .findById(Long.parseLong(vehicleId))
+                .orElseThrow(() -> new NoSuchElementException("Vehicle not found"));
+    }
+
+    /**
+     * Estimates many origin/destination pairs with bounded concurrency.
+     * Duplicate pairs are estimated once. Each result is handed to the sink as
+     * soon as it is ready, from the thread that computed it.
+     *
+     * The batch must have been checked with {@link #prepareBatchTripEstimate}.
+     */
+    public void batchTripEstimate(
+            List<TripPair> pairs,
+            Vehicle vehicle,
+            Consumer<BatchEstimate> sink) {
+
+        Map<String, TripPair> unique = new LinkedHashMap<>();
+        for (TripPair pair : pairs) {
+            unique.putIfAbsent(
+                    DirectionsKey.normalize(pair.origin()) + "\n" +
+                            DirectionsKey.normalize(pair.destination()),
+                    pair);
+        }
 
-                TripEstimate currentRoute = getRouteEstimate(
-                        route,
-                        estimationVehicle);
-                if (bestRoute == null ||
-                        currentRoute.getEmissionsCO2eKg() < bestRoute.getEmissionsCO2eKg()) {
-                    bestRoute = currentRoute;
+        Semaphore permits = new Semaphore(maxBatchConcurrency);
+        AtomicReference<RuntimeException> sinkFailure = new AtomicReference<>();
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        Vehicle batchVehicle = vehicle;
+        for (TripPair pair : unique.values()) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (sinkFailure.get() != null) {
+                permits.release();
+                break;
+            }
+            tasks.add(CompletableFuture.runAsync(() -> {
+                try {
+                    BatchEstimate result;
+                    try {
+                        var estimate = getTripEstimate(pair.origin(), pair.destination(), batchVehicle);
+                        result = new BatchEstimate(
+                                pair.origin(),
+                                pair.destination(),
+                                estimate.getAlternatives(),
+                                null);
+                    } catch (RuntimeException e) {
+                        result = new BatchEstimate(pair.origin(), pair.destination(), null, e.getMessage());
+                    }
+                    sink.accept(result);
+                } catch (RuntimeException e) {
+                    sinkFailure.compareAndSet(null, e);
+                } finally {
+                    permits.release();
                 }
+            }, estimateExecutor));
+        }
+
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        if (sinkFailure.get() != null) {
+            throw sinkFailure.get();
+        }
+    }
+
+    private TripEstimate estimateMode(
+            String origin,
+            String destination,
+            TravelMode mode,
+            Vehicle vehicle) {
+        DirectionsKey key = DirectionsKey.of(origin, destination, mode);
+        Vehicle estimationVehicle = null;
+        if (vehicle != null) {
+            if (vehicle.getType().toTravelMode() == mode) {
+                estimationVehicle = vehicle;
             }
-            if (bestRoute == null) {
-                continue;
+        }
+
+        DirectionsResult result = directionsCache.get(key);
+        if (result == null) {
+            // Estimates stored before the last restart are still valid
+            Optional<RouteEstimate> stored = routeEstimateStore.find(
+                    key,
+                    emissionFactors.generation());
+            if (stored.isPresent()) {
+                return getStoredEstimate(stored.get(), estimationVehicle);
+            }
+
+            // Concurrent callers for the same route share one Maps API call
+            result = directionsFlight.execute(
+                    key,
+                    () -> loadDirections(key, origin, destination),
+                    directionsTimeoutMs);
+        }
+
+        return selectBestRoute(result, estimationVehicle);
+    }
+
+    private DirectionsResult loadDirections(
+            DirectionsKey key,
+            String origin,
+            String destination) {
+        // A previous flight for this key may have finished in the meantime
+        DirectionsResult result = directionsCache.get(key);
+        if (result != null) {
+            return result;
+        }
+
+        result = directionsProvider.getDirections(origin, destination, key.mode());
+        directionsCache.put(key, result);
+
+        // Read before estimating, so a concurrent factor change leaves the
+        // stored row on the old generation instead of mislabelling it
+        long factorGeneration = emissionFactors.generation();
+        // The store keeps the estimate without vehicle specific emissions
+        TripEstimate defaultEstimate = selectBestRoute(result, null);
+        if (defaultEstimate != null) {
+            routeEstimateStore.save(
+                    key,
+                    defaultEstimate.getDistanceKm(),
+                    defaultEstimate.getDuration().getSeconds(),
+                    defaultEstimate.getEmissionsCO2eKg(),
+                    factorGeneration);
+        }
+        return result;
+    }
+
+    private TripEstimate selectBestRoute(
+            DirectionsResult result,
+            Vehicle vehicle) {
+        if (result == null) {
+            return null;
+        }
+        if (result.routes.length == 0) {
+            return null;
+        }
+
+        // Find and select best route
+        TripEstimate bestRoute = null;
+        for (DirectionsRoute route : result.routes) {
+            TripEstimate currentRoute = getRouteEstimate(route, vehicle);
+            if (bestRoute == null ||
+                    currentRoute.getEmissionsCO2eKg() < bestRoute.getEmissionsCO2eKg()) {
+                bestRoute = currentRoute;
             }
+        }
+        if (bestRoute != null) {
             System.out.println("add alternative" + bestRoute.toString());
-            results.addAlternative(mode.name().toLowerCase(), bestRoute);
         }
+        return bestRoute;
+    }
 
-        return results;
+    private TripEstimate getStoredEstimate(
+            RouteEstimate stored,
+            Vehicle vehicle) {
+        double emissions = stored.getEmissionsCO2eKg();
+        if (vehicle != null) {
+            // Vehicle routes are a single travel mode, so emissions scale with
+            // distance. TODO: clean up units
+            emissions = stored.getDistanceKm() *
+                    (vehicle.getEmissionsCO2ePerKm() / 1000);
+        }
+        return new TripEstimate(
+                Duration.ofSeconds(stored.getDurationSeconds()),
+                stored.getDistanceKm(),
+                emissions);
     }
 
-    // All of these are intended to include:
-    // - Amortized vehicle production emissions
-    // - Fuel emissions
-    // But not:
-    // - Food emissions (e.g. from walking)
-    // Public transport should be calculated per person:
-    private final double emissionsPerKmWalking = 0.0;
-    private final double emissionsPerKmBicycling = 0.0;
-    private final double emissionsPerKmCar = 0.118;
-    private final double emissionsPerPersonKmSkyssBybanen = 0.001;
-    private final double emissionsPerPersonKmSkyssBus = 0.089;
-    private final double emissionsPerPersonKmVyTrain = 0.005; // Source: Claude estimate
+    @PreDestroy
+    void shutdownEstimateExecutor() {
+        estimateExecutor.shutdownNow();
+    }
 
     private TripEstimate getRouteEstimate(
             DirectionsRoute route,
@@ -365,103 +791,33 @@ public class TransportService {
         double totalDistanceMeters = 0.0;
         double totalEmissions = 0.0;
 
+        // A vehicle replaces the default factor for its own travel mode
+        TravelMode vehicleMode = null;
+        double vehicleFactor = 0.0;
+        if (vehicle != null) {
+            vehicleMode = vehicle.getType().toTravelMode();
+            // TODO: clean up units
+            vehicleFactor = vehicle.getEmissionsCO2ePerKm() / 1000;
+        }
+
         for (DirectionsLeg leg : route.legs) {
             for (DirectionsStep step : leg.steps) {
-                if (step.distance != null) {
-                    totalDistanceMeters += step.distance.inMeters;
-                }
                 if (step.duration != null) {
                     totalDuration = totalDuration.plusSeconds(
                             step.duration.inSeconds);
                 }
-
-                switch (step.travelMode) {
-                    case WALKING:
-                        totalEmissions += (step.distance.inMeters / 1000) *
-                                emissionsPerKmWalking;
-                        break;
-                    case BICYCLING:
-                        if (vehicle != null &&
-                                vehicle.getType().toTravelMode() == TravelMode.BICYCLING) {
-                            totalEmissions += (step.distance.inMeters / 1000) *
-                            // TODO: clean up units
-                                    (vehicle.getEmissionsCO2ePerKm() / 1000);
-                            break;
-                        }
-                        totalEmissions += (step.distance.inMeters / 1000) *
-                                emissionsPerKmBicycling;
-                        break;
-                    case TRANSIT:
-                        if (step.transitDetails != null) {
-                            switch (step.transitDetails.line.vehicle.type) {
-                                case BUS:
-                                    // TODO: check line operator
-                                    totalEmissions += (step.distance.inMeters / 1000) *
-                                            emissionsPerPersonKmSkyssBus;
-                                    break;
-                                case CABLE_CAR:
-                                    break;
-                                case TRAM:
-                                    // E.g. Bybanen
-                                    totalEmissions += (step.distance.inMeters / 1000) *
-                                            emissionsPerPersonKmSkyssBybanen;
-                                    break;
-                                case SUBWAY:
-                                    break;
-                                case RAIL:
-                                    break;
-                                case HEAVY_RAIL:
-                                    // E.g. Vy
-                                    totalEmissions += (step.distance.inMeters / 1000) *
-                                            emissionsPerPersonKmVyTrain;
-                                    break;
-                                case FERRY:
-                                    break;
-                                case FUNICULAR:
-                                    break;
-                                case COMMUTER_TRAIN:
-                                    break;
-                                case GONDOLA_LIFT:
-                                    break;
-                                case HIGH_SPEED_TRAIN:
-                                    break;
-                                case INTERCITY_BUS:
-                                    break;
-                                case LONG_DISTANCE_TRAIN:
-                                    break;
-                                case METRO_RAIL:
-                                    break;
-                                case MONORAIL:
-                                    break;
-                                case SHARE_TAXI:
-                                    break;
-                                case TROLLEYBUS:
-                                    break;
-                                case OTHER:
-                                    break;
-                                default:
-                                    break;
-                            }
-                        } else {
-                            // Fallback
-                            totalEmissions += (step.distance.inMeters / 1000) * 0.0;
-                        }
-                        break;
-                    case DRIVING:
-                        if (vehicle != null &&
-                                vehicle.getType().toTravelMode() == TravelMode.DRIVING) {
-                            totalEmissions += (step.distance.inMeters / 1000) *
-                            // TODO: clean up units
-                                    (vehicle.getEmissionsCO2ePerKm() / 1000);
-                            break;
-                        }
-                        totalEmissions += (step.distance.inMeters / 1000) * emissionsPerKmCar;
-                        break;
-                    case UNKNOWN:
-                        break;
-                    default:
-                        System.out.println("Unknown");
-                        break;
+                if (step.distance == null) {
+                    continue;
+                }
+                totalDistanceMeters += step.distance.inMeters;
+
+                double distanceKm = step.distance.inMeters / 1000.0;
+                if (vehicleMode != null && step.travelMode == vehicleMode) {
+                    totalEmissions += distanceKm * vehicleFactor;
+                } else {
+                    totalEmissions += distanceKm * emissionFactors.factorKgPerKm(
+                            step.travelMode,
+                            transitVehicleType(step));
                 }
             }
         }
@@ -472,81 +828,13 @@ public class TransportService {
                 totalEmissions);
     }
 
-    private final String googleMapsApiKey = System.getenv(
-            "GOOGLE_MAPS_API_KEY");
-
-    @Cacheable(value = "directions", key = "#origin + '-' + #destination + '-' + #mode")
-    private DirectionsResult getDirections(
-            String origin,
-            String destination,
-            TravelMode mode) {
-        GeoApiContext context = new GeoApiContext.Builder()
-                .apiKey(this.googleMapsApiKey)
-                .build();
-
-        DirectionsApiRequest request = DirectionsApi.newRequest(context)
-                .origin(origin)
-                .destination(destination)
-                .mode(mode);
-        if (mode == TravelMode.TRANSIT) {
-            request = request.transitMode(
-                    TransitMode.BUS,
-                    TransitMode.SUBWAY,
-                    TransitMode.TRAM,
-                    TransitMode.RAIL,
-                    TransitMode.TRAIN);
-        }
-
-        DirectionsResult result = null;
-        try {
-            System.out.println("Requesting directions for mode: " + mode);
-            result = request.await();
-            System.out.println("Received directions for mode: " + mode);
-        } catch (ZeroResultsException e) {
-            System.out.println("No results found for mode: " + mode);
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new RuntimeException("Failed to fetch directions", e);
-        } finally {
-            context.shutdown();
+    private static com.google.maps.model.VehicleType transitVehicleType(
+            DirectionsStep step) {
+        if (step.transitDetails == null ||
+                step.transitDetails.line == null ||
+                step.transitDetails.line.vehicle == null) {
+            return null;
         }
-
-        return result;
-    }
-
-    @Cacheable(value = "address", key = "#query")
-    private List<String> getAddressAutocompleteResults(
-            String query,
-            UUID sessionToken) {
-        GeoApiContext context = new GeoApiContext.Builder()
-                .apiKey(this.googleMapsApiKey)
-                .build();
-
-        PlaceAutocompleteRequest.SessionToken token = new PlaceAutocompleteRequest.SessionToken(sessionToken);
-
-        PlaceAutocompleteRequest request = PlacesApi.placeAutocomplete(
-                context,
-                query,
-                token);
-
-        AutocompletePrediction[] result = null;
-        try {
-            result = request.await();
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new RuntimeException(
-                    "Failed to fetch address autocomplete",
-                    e);
-        } finally {
-            context.shutdown();
-        }
-
-        List<String> addresses = new ArrayList<>();
-        for (AutocompletePrediction prediction : result) {
-            // TODO: not sure if this is the optimal value to use
-            addresses.add(prediction.description);
-        }
-
-        return addresses;
+        return step.transitDetails.line.vehicle.type;
     }
 }
@@ -0,0 +1,65 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Trip;
+import com.example.demo.repository.TripRepository;
+import java.time.LocalDateTime;
+
+/**
+ * Published whenever a trip is added, changed or removed, so projections
+ * derived from trips can be kept up to date. Listeners apply the difference
+ * between the figures before and after the change; before is null for a new
+ * trip and after is null for a removed one.
+ */
+public record TripChangedEvent(TripFigures before, TripFigures after) {
+
+    public record TripFigures(
+            long tripId,
+            Long userId,
+            LocalDateTime createdAt,
+            String travelMode,
+            double distanceKm,
+            double durationSeconds,
+            double emissionsCO2eKg,
+            double savedEmissionsCO2eKg) {
+
+        public static TripFigures of(Trip trip) {
+            return new TripFigures(
+                    trip.getId(),
+                    trip.getUser() != null ? trip.getUser().getId() : null,
+                    trip.getCreatedAt(),
+                    trip.getTravelMode(),
+                    valueOf(trip.getTotalDistanceKm()),
+                    valueOf(trip.getTotalDurationSeconds()),
+                    valueOf(trip.getTotalEmissionsCO2eKg()),
+                    valueOf(trip.getSavedEmissionsCO2eKg()));
+        }
+
+        public static TripFigures of(TripRepository.TripFiguresRow trip) {
+            return new TripFigures(
+                    trip.id(),
+                    trip.userId(),
+                    trip.createdAt(),
+                    trip.travelMode(),
+                    valueOf(trip.totalDistanceKm()),
+                    valueOf(trip.totalDurationSeconds()),
+                    valueOf(trip.totalEmissionsCO2eKg()),
+                    valueOf(trip.savedEmissionsCO2eKg()));
+        }
+
+        private static double valueOf(Double value) {
+            return value != null ? value : 0.0;
+        }
+    }
+
+    public static TripChangedEvent added(Trip trip) {
+        return new TripChangedEvent(null, TripFigures.of(trip));
+    }
+
+    public static TripChangedEvent updated(TripFigures before, Trip after) {
+        return new TripChangedEvent(before, TripFigures.of(after));
+    }
+
+    public static TripChangedEvent removed(Trip trip) {
+        return new TripChangedEvent(TripFigures.of(trip), null);
+    }
+}
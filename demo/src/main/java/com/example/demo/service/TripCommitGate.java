@@ -0,0 +1,72 @@
+package com.example.demo.service;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Lets in-memory projections of trips reload from the tables without racing
+ * the after-commit listeners of trip transactions.
+ *
+ * A transaction that publishes trip events enters the gate just before it
+ * commits and leaves once its after-commit listeners have run. A reload runs
+ * with the gate closed, so every trip change is either committed and applied
+ * before the reload reads the tables, or committed after it. No change can be
+ * in the tables a reload reads and still be applied on top of it.
+ */
+@Component
+public class TripCommitGate {
+
+    private final ReentrantReadWriteLock gate = new ReentrantReadWriteLock();
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onTripChanged(TripChangedEvent event) {
+        enter();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onTripsImported(TripsImportedEvent event) {
+        enter();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onUserTripsRemoved(UserTripsRemovedEvent event) {
+        enter();
+    }
+
+    private void enter() {
+        gate.readLock().lock();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public int getOrder() {
+                // After the after-commit listeners, which run at their own order
+                return Ordered.LOWEST_PRECEDENCE;
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                gate.readLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Runs a reload while no trip transaction is committing. Trip commits
+     * wait until it returns, so it should only read what it needs.
+     *
+     * Callers must not hold a lock that after-commit trip listeners take.
+     */
+    public <T> T reload(Supplier<T> load) {
+        gate.writeLock().lock();
+        try {
+            return load.get();
+        } finally {
+            gate.writeLock().unlock();
+        }
+    }
+}
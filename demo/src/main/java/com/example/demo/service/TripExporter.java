@@ -0,0 +1,165 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.TripRepository;
+import com.example.demo.repository.TripRepository.TripExportRow;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Writes all trips to a stream as they are read from the database, so the
+ * memory used does not grow with the number of trips.
+ *
+ * Trips are read through a cursor with a JDBC fetch size, as rows with only
+ * the columns that are written. No entities are loaded, so neither the
+ * persistence context nor the users behind the trips add to the cost.
+ */
+@Service
+public class TripExporter {
+
+    public enum Format {
+        // A JSON array, as returned by GET /trips
+        JSON,
+        NDJSON,
+        // The columns of TripImporter, with the trip id first
+        CSV,
+    }
+
+    private final TripRepository tripRepository;
+    private final ObjectMapper objectMapper;
+
+    public TripExporter(TripRepository tripRepository, ObjectMapper objectMapper) {
+        this.tripRepository = tripRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Writes all trips in id order.
+     *
+     * @return the number of trips written
+     */
+    @Transactional(readOnly = true)
+    public long export(Format format, OutputStream out) throws IOException {
+        try (Stream<TripExportRow> trips = tripRepository.streamAll()) {
+            return switch (format) {
+                case JSON -> writeJson(trips.iterator(), out);
+                case NDJSON -> writeNdjson(trips.iterator(), out);
+                case CSV -> writeCsv(trips.iterator(), out);
+            };
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private long writeJson(Iterator<TripExportRow> trips, OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.createGenerator(out);
+        generator.writeStartArray();
+        long count = 0;
+        while (trips.hasNext()) {
+            writeTrip(generator, trips.next());
+            count++;
+        }
+        generator.writeEndArray();
+        generator.flush();
+        return count;
+    }
+
+    private long writeNdjson(Iterator<TripExportRow> trips, OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.createGenerator(out);
+        generator.setRootValueSeparator(new SerializedString("\n"));
+        long count = 0;
+        while (trips.hasNext()) {
+            writeTrip(generator, trips.next());
+            count++;
+        }
+        if (count > 0) {
+            generator.writeRaw('\n');
+        }
+        generator.flush();
+        return count;
+    }
+
+    private long writeCsv(Iterator<TripExportRow> trips, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        writer.write("id,userId,origin,destination,travelMode,createdAt,distanceKm,durationSeconds,emissionsCO2eKg,savedEmissionsCO2eKg\n");
+        long count = 0;
+        while (trips.hasNext()) {
+            TripExportRow trip = trips.next();
+            writer.write(trip.id() + ","
+                    + (trip.userId() != null ? trip.userId() : "") + ","
+                    + quote(trip.origin()) + ","
+                    + quote(trip.destination()) + ","
+                    + quote(trip.travelMode()) + ","
+                    + trip.createdAt() + ","
+                    + valueOf(trip.totalDistanceKm()) + ","
+                    + valueOf(trip.totalDurationSeconds()) + ","
+                    + valueOf(trip.totalEmissionsCO2eKg()) + ","
+                    + valueOf(trip.savedEmissionsCO2eKg()) + "\n");
+            count++;
+        }
+        writer.flush();
+        return count;
+    }
+
+    /** Writes a trip in the same shape as the Trip entity is serialized. */
+    private static void writeTrip(JsonGenerator generator, TripExportRow trip) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", trip.id());
+        generator.writeStringField("origin", trip.origin());
+        generator.writeStringField("destination", trip.destination());
+        generator.writeStringField("travelMode", trip.travelMode());
+        generator.writeObjectField("totalDistanceKm", trip.totalDistanceKm());
+        generator.writeObjectField("totalDurationSeconds", trip.totalDurationSeconds());
+        generator.writeObjectField("totalEmissionsCO2eKg", trip.totalEmissionsCO2eKg());
+        generator.writeObjectField("savedEmissionsCO2eKg", trip.savedEmissionsCO2eKg());
+        generator.writeObjectField("createdAt", trip.createdAt());
+        if (trip.vehicleId() == null) {
+            generator.writeNullField("vehicle");
+        } else {
+            generator.writeObjectFieldStart("vehicle");
+            generator.writeNumberField("id", trip.vehicleId());
+            generator.writeStringField("make", trip.vehicleMake());
+            generator.writeStringField("model", trip.vehicleModel());
+            generator.writeObjectField("year", trip.vehicleYear());
+            generator.writeObjectField("type", trip.vehicleType());
+            generator.writeObjectField("emissionsCO2ePerKm", trip.vehicleEmissionsCO2ePerKm());
+            generator.writeBooleanField("default", trip.vehicleId().equals(trip.ownerDefaultVehicleId()));
+            generator.writeEndObject();
+        }
+        if (trip.transportationModeId() == null) {
+            generator.writeNullField("transportationMode");
+        } else {
+            generator.writeObjectFieldStart("transportationMode");
+            generator.writeNumberField("id", trip.transportationModeId());
+            generator.writeStringField("transportationModeName", trip.transportationModeName());
+            generator.writeObjectField("co2PerKilometer", trip.transportationModeCo2PerKilometer());
+            generator.writeEndObject();
+        }
+        if (trip.totalMoneySaved() == null) {
+            generator.writeNullField("moneySaved");
+        } else {
+            generator.writeObjectFieldStart("moneySaved");
+            generator.writeNumberField("totalMoneySaved", trip.totalMoneySaved());
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+
+    private static String quote(String value) {
+        return value == null ? "" : '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String valueOf(Double value) {
+        return value == null ? "" : value.toString();
+    }
+}
@@ -0,0 +1,478 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Trip;
+import com.example.demo.model.TripImport;
+import com.example.demo.model.User;
+import com.example.demo.repository.TripImportRepository;
+import com.example.demo.repository.UserRepository;
+import com.example.demo.service.TripChangedEvent.TripFigures;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import javax.sql.DataSource;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Bulk import of trips with precomputed figures, e.g. when migrating users
+ * from another tracker.
+ *
+ * Rows are read one at a time from CSV (with a header row) or NDJSON and
+ * written in chunks, each in its own transaction together with the import
+ * progress. On PostgreSQL a chunk is sent with COPY, elsewhere with batched
+ * inserts. A failed import can be resumed by sending the same file again,
+ * which skips the rows that were already committed.
+ */
+@Service
+public class TripImporter {
+
+    public enum Format {
+        CSV,
+        NDJSON,
+    }
+
+    /**
+     * One row of an import file. CSV columns have the same names.
+     */
+    public record ImportRow(
+            Long userId,
+            String origin,
+            String destination,
+            String travelMode,
+            LocalDateTime createdAt,
+            Double distanceKm,
+            Double durationSeconds,
+            Double emissionsCO2eKg,
+            Double savedEmissionsCO2eKg) {
+    }
+
+    private static final List<String> CSV_COLUMNS = List.of(
+            "userId",
+            "origin",
+            "destination",
+            "travelMode",
+            "createdAt",
+            "distanceKm",
+            "durationSeconds",
+            "emissionsCO2eKg",
+            "savedEmissionsCO2eKg");
+
+    // Must match the generator of Trip, and its allocation size
+    private static final String TRIP_SEQUENCE = "trips_seq";
+    private static final int ID_BLOCK_SIZE = 50;
+
+    private final TripImportRepository importRepository;
+    private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+    private final EntityManagerFactory entityManagerFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Resolved on first use
+    private volatile Boolean copySupported;
+    private volatile String copyStatement;
+
+    public TripImporter(
+            TripImportRepository importRepository,
+            UserRepository userRepository,
+            ApplicationEventPublisher eventPublisher,
+            ObjectMapper objectMapper,
+            JdbcTemplate jdbcTemplate,
+            DataSource dataSource,
+            EntityManagerFactory entityManagerFactory,
+            PlatformTransactionManager transactionManager,
+            @Value("${transport.import.chunk-size:5000}") int chunkSize) {
+        this.importRepository = importRepository;
+        this.userRepository = userRepository;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSource = dataSource;
+        this.entityManagerFactory = entityManagerFactory;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+    }
+
+    public Optional<TripImport> getImport(long id) {
+        return importRepository.findById(id);
+    }
+
+    /**
+     * Imports trips from a reader, which is consumed one row at a time.
+     *
+     * @param resumeId an earlier import of the same file to continue, or null
+     * @return the import, failed if a chunk could not be written
+     * @throws NoSuchElementException   if the import to resume is not found
+     * @throws IllegalArgumentException if the CSV header lacks a column
+     */
+    public TripImport importTrips(BufferedReader reader, Format format, Long resumeId) throws IOException {
+        TripImport tripImport;
+        if (resumeId == null) {
+            tripImport = importRepository.save(new TripImport(format.name()));
+        } else {
+            tripImport = importRepository.findById(resumeId)
+                    .orElseThrow(() -> new NoSuchElementException("Import not found"));
+            if (tripImport.getStatus() == TripImport.Status.COMPLETED) {
+                return tripImport;
+            }
+            tripImport.resume();
+            tripImport = importRepository.save(tripImport);
+        }
+
+        Map<String, Integer> header = format == Format.CSV ? readHeader(reader) : null;
+        long skip = tripImport.getRowsRead();
+        long rowNumber = 0;
+        List<ImportRow> rows = new ArrayList<>();
+        long read = 0;
+        long rejected = 0;
+        String lastError = null;
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                rowNumber++;
+                if (rowNumber <= skip) {
+                    continue;
+                }
+                read++;
+                try {
+                    rows.add(validate(format == Format.CSV
+                            ? parseCsv(line, header)
+                            : objectMapper.readValue(line, ImportRow.class)));
+                } catch (IOException | RuntimeException e) {
+                    rejected++;
+                    lastError = "Row " + rowNumber + ": " + e.getMessage();
+                }
+                if (read == chunkSize) {
+                    tripImport = writeChunk(tripImport, rows, read, rejected, lastError);
+                    rows.clear();
+                    read = 0;
+                    rejected = 0;
+                    lastError = null;
+                }
+            }
+            if (read > 0) {
+                tripImport = writeChunk(tripImport, rows, read, rejected, lastError);
+            }
+            tripImport.complete();
+        } catch (IOException | RuntimeException e) {
+            // Committed chunks stay; sending the file again with this import
+            // id continues after them
+            tripImport = importRepository.findById(tripImport.getId()).orElseThrow();
+            tripImport.fail(e.getMessage());
+        }
+        return importRepository.save(tripImport);
+    }
+
+    private static Map<String, Integer> readHeader(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            throw new IllegalArgumentException("Missing CSV header");
+        }
+        List<String> names = splitCsv(line);
+        Map<String, Integer> header = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            header.put(names.get(i).trim(), i);
+        }
+        for (String column : CSV_COLUMNS) {
+            if (!header.containsKey(column)) {
+                throw new IllegalArgumentException("Missing CSV column " + column);
+            }
+        }
+        return header;
+    }
+
+    private static ImportRow parseCsv(String line, Map<String, Integer> header) {
+        List<String> fields = splitCsv(line);
+        if (fields.size() < header.size()) {
+            throw new IllegalArgumentException("Expected " + header.size() + " fields");
+        }
+        return new ImportRow(
+                Long.parseLong(field(fields, header, "userId")),
+                field(fields, header, "origin"),
+                field(fields, header, "destination"),
+                field(fields, header, "travelMode"),
+                LocalDateTime.parse(field(fields, header, "createdAt")),
+                Double.parseDouble(field(fields, header, "distanceKm")),
+                Double.parseDouble(field(fields, header, "durationSeconds")),
+                Double.parseDouble(field(fields, header, "emissionsCO2eKg")),
+                Double.parseDouble(field(fields, header, "savedEmissionsCO2eKg")));
+    }
+
+    private static String field(List<String> fields, Map<String, Integer> header, String column) {
+        return fields.get(header.get(column)).trim();
+    }
+
+    /**
+     * Splits one CSV line, with fields optionally in double quotes and
+     * quotes inside them doubled. Quoted line breaks are not supported.
+     */
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static ImportRow validate(ImportRow row) {
+        if (row.userId() == null) {
+            throw new IllegalArgumentException("userId is required");
+        }
+        if (isBlank(row.origin()) || isBlank(row.destination()) || isBlank(row.travelMode())) {
+            throw new IllegalArgumentException("origin, destination and travelMode are required");
+        }
+        if (row.createdAt() == null) {
+            throw new IllegalArgumentException("createdAt is required");
+        }
+        if (!isNonNegative(row.distanceKm())
+                || !isNonNegative(row.durationSeconds())
+                || !isNonNegative(row.emissionsCO2eKg())) {
+            throw new IllegalArgumentException("distanceKm, durationSeconds and emissionsCO2eKg must be non-negative");
+        }
+        // Savings are negative when the trip emitted more than driving
+        if (row.savedEmissionsCO2eKg() == null || !Double.isFinite(row.savedEmissionsCO2eKg())) {
+            throw new IllegalArgumentException("savedEmissionsCO2eKg is required");
+        }
+        return row;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private static boolean isNonNegative(Double value) {
+        return value != null && Double.isFinite(value) && value >= 0;
+    }
+
+    /**
+     * Writes the valid rows of a chunk and records the chunk in the import,
+     * in one transaction. Rows of unknown users are rejected here.
+     */
+    private TripImport writeChunk(
+            TripImport previous,
+            List<ImportRow> rows,
+            long read,
+            long rejected,
+            String lastError) {
+        return transactionTemplate.execute(status -> {
+            Set<Long> users = new HashSet<>(userRepository.findExistingIds(
+                    rows.stream().map(ImportRow::userId).distinct().toList()));
+            List<ImportRow> valid = new ArrayList<>(rows.size());
+            long unknownUsers = 0;
+            Long unknownUser = null;
+            for (ImportRow row : rows) {
+                if (users.contains(row.userId())) {
+                    valid.add(row);
+                } else {
+                    unknownUsers++;
+                    unknownUser = row.userId();
+                }
+            }
+
+            List<TripFigures> trips = isCopySupported() ? copy(valid) : insert(valid);
+            if (!trips.isEmpty()) {
+                eventPublisher.publishEvent(new TripsImportedEvent(trips));
+            }
+            // Reloaded, so a rolled back chunk leaves no trace in the counters
+            TripImport tripImport = importRepository.findById(previous.getId()).orElseThrow();
+            tripImport.advance(
+                    read,
+                    trips.size(),
+                    rejected + unknownUsers,
+                    unknownUser != null ? "User " + unknownUser + " not found" : lastError);
+            return importRepository.save(tripImport);
+        });
+    }
+
+    private boolean isCopySupported() {
+        if (copySupported == null) {
+            copySupported = jdbcTemplate.execute((Connection connection) -> connection.isWrapperFor(PGConnection.class));
+        }
+        return copySupported;
+    }
+
+    private List<TripFigures> insert(List<ImportRow> rows) {
+        List<TripFigures> trips = new ArrayList<>(rows.size());
+        for (ImportRow row : rows) {
+            Trip trip = new Trip(
+                    entityManager.getReference(User.class, row.userId()),
+                    row.origin(),
+                    row.destination(),
+                    row.travelMode(),
+                    null,
+                    row.distanceKm(),
+                    row.durationSeconds(),
+                    row.emissionsCO2eKg(),
+                    row.savedEmissionsCO2eKg());
+            trip.setCreatedAt(row.createdAt());
+            // Flushed in JDBC batches, see hibernate.jdbc.batch_size
+            entityManager.persist(trip);
+            trips.add(figures(trip.getId(), row));
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return trips;
+    }
+
+    private List<TripFigures> copy(List<ImportRow> rows) {
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        long[] ids = reserveIds(rows.size());
+        StringBuilder csv = new StringBuilder();
+        List<TripFigures> trips = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            ImportRow row = rows.get(i);
+            csv.append(ids[i]).append(',')
+                    .append(row.userId()).append(',')
+                    .append(quote(row.origin())).append(',')
+                    .append(quote(row.destination())).append(',')
+                    .append(quote(row.travelMode())).append(',')
+                    .append(row.distanceKm()).append(',')
+                    .append(row.durationSeconds()).append(',')
+                    .append(row.emissionsCO2eKg()).append(',')
+                    .append(row.savedEmissionsCO2eKg()).append(',')
+                    .append(row.createdAt()).append('\n');
+            trips.add(figures(ids[i], row));
+        }
+        // The connection of the current transaction
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            connection.unwrap(PGConnection.class)
+                    .getCopyAPI()
+                    .copyIn(copyStatement(), new StringReader(csv.toString()));
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("COPY failed: " + e.getMessage(), e);
+        }
+        return trips;
+    }
+
+    private String copyStatement() {
+        if (copyStatement == null) {
+            // Column names as mapped by Hibernate and its naming strategy
+            AbstractEntityPersister persister = (AbstractEntityPersister) entityManagerFactory
+                    .unwrap(SessionFactoryImplementor.class)
+                    .getMappingMetamodel()
+                    .getEntityDescriptor(Trip.class);
+            List<String> columns = new ArrayList<>();
+            columns.add(persister.getIdentifierColumnNames()[0]);
+            for (String property : List.of(
+                    "user",
+                    "origin",
+                    "destination",
+                    "travelMode",
+                    "totalDistanceKm",
+                    "totalDurationSeconds",
+                    "totalEmissionsCO2eKg",
+                    "savedEmissionsCO2eKg",
+                    "createdAt")) {
+                columns.add(persister.getPropertyColumnNames(property)[0]);
+            }
+            copyStatement = "COPY " + persister.getTableName()
+                    + " (" + String.join(", ", columns) + ") FROM STDIN WITH (FORMAT csv)";
+        }
+        return copyStatement;
+    }
+
+    /**
+     * Takes trip ids from the sequence the same way Hibernate's pooled
+     * optimizer does: each sequence value stands for the block of ids up to
+     * and including it.
+     */
+    private long[] reserveIds(int count) {
+        int blocks = (count + ID_BLOCK_SIZE - 1) / ID_BLOCK_SIZE + 1;
+        List<Long> values = jdbcTemplate.queryForList(
+                "SELECT nextval('" + TRIP_SEQUENCE + "') FROM generate_series(1, ?)",
+                Long.class,
+                blocks);
+        long[] ids = new long[count];
+        int next = 0;
+        for (long value : values) {
+            // The first values of a new sequence have no full block below them
+            if (value < ID_BLOCK_SIZE) {
+                continue;
+            }
+            for (long id = value - ID_BLOCK_SIZE + 1; id <= value && next < count; id++) {
+                ids[next++] = id;
+            }
+        }
+        if (next < count) {
+            return reserveMore(ids, next);
+        }
+        return ids;
+    }
+
+    private long[] reserveMore(long[] ids, int filled) {
+        long[] rest = reserveIds(ids.length - filled);
+        System.arraycopy(rest, 0, ids, filled, rest.length);
+        return ids;
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static TripFigures figures(long tripId, ImportRow row) {
+        return new TripFigures(
+                tripId,
+                row.userId(),
+                row.createdAt(),
+                row.travelMode(),
+                row.distanceKm(),
+                row.durationSeconds(),
+                row.emissionsCO2eKg(),
+                row.savedEmissionsCO2eKg());
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.demo.service;
+
+import com.example.demo.model.PendingTrip;
+import com.example.demo.model.Trip;
+import com.example.demo.model.User;
+import com.example.demo.repository.PendingTripRepository;
+import com.example.demo.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Registers trips in the background, so submitting a trip does not hold a
+ * request thread while the directions are fetched.
+ *
+ * Submitted trips are written to the pending_trips table. A single drain
+ * loop claims them in batches, estimates the trips of a batch concurrently
+ * and saves the results, with their challenge progress, in one transaction.
+ *
+ * Each batch claims its rows under its own claim id, and a row is only
+ * settled while that claim still holds, so a worker whose lease ran out
+ * cannot overwrite the row or save its trip a second time. Claims older than
+ * the lease are requeued, e.g. those of a stopped instance. A failed attempt
+ * is retried with exponential backoff, unless the trip itself is invalid or
+ * the attempts are used up.
+ */
+@Service
+public class TripIngestQueue {
+
+    private final PendingTripRepository pendingTripRepository;
+    private final UserRepository userRepository;
+    private final TransportService transportService;
+    private final TripService tripService;
+    private final ChallengeStatusService challengeStatusService;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxConcurrency;
+    private final Duration lease;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    // Claim ids are this instance's id and a batch number
+    private final String instanceId = UUID.randomUUID().toString();
+    private final AtomicLong batches = new AtomicLong();
+
+    public TripIngestQueue(
+            PendingTripRepository pendingTripRepository,
+            UserRepository userRepository,
+            TransportService transportService,
+            TripService tripService,
+            ChallengeStatusService challengeStatusService,
+            PlatformTransactionManager transactionManager,
+            @Value("${transport.ingest.batch-size:50}") int batchSize,
+            @Value("${transport.ingest.max-concurrency:8}") int maxConcurrency,
+            @Value("${transport.ingest.lease-ms:300000}") long leaseMs,
+            @Value("${transport.ingest.max-attempts:5}") int maxAttempts,
+            @Value("${transport.ingest.retry-backoff-ms:5000}") long retryBackoffMs) {
+        this.pendingTripRepository = pendingTripRepository;
+        this.userRepository = userRepository;
+        this.transportService = transportService;
+        this.tripService = tripService;
+        this.challengeStatusService = challengeStatusService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maxConcurrency = maxConcurrency;
+        this.lease = Duration.ofMillis(leaseMs);
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = Duration.ofMillis(retryBackoffMs);
+    }
+
+    /**
+     * Queues a trip for registration.
+     *
+     * @throws NoSuchElementException   if the user is not found
+     * @throws IllegalArgumentException if the trip cannot be estimated
+     */
+    public PendingTrip submit(
+            long userId,
+            String origin,
+            String destination,
+            String mode,
+            String vehicleId) {
+        if (!userRepository.existsById(userId)) {
+            throw new NoSuchElementException("User not found");
+        }
+        if (origin == null || origin.isBlank() || destination == null || destination.isBlank()) {
+            throw new IllegalArgumentException("Origin and destination are required");
+        }
+        transportService.validateTripSelection(mode, vehicleId);
+
+        PendingTrip pending = pendingTripRepository.save(new PendingTrip(
+                userId,
+                origin,
+                destination,
+                mode,
+                vehicleId == null ? null : Long.parseLong(vehicleId)));
+        drainSoon();
+        return pending;
+    }
+
+    public Optional<PendingTrip> getPendingTrip(long id) {
+        return pendingTripRepository.findById(id);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void releaseAbandoned() {
+        releaseExpired();
+        drainSoon();
+    }
+
+    @Scheduled(fixedDelayString = "${transport.ingest.poll-interval-ms:1000}")
+    public void poll() {
+        releaseExpired();
+        drainSoon();
+    }
+
+    private void releaseExpired() {
+        int released = pendingTripRepository.releaseExpired(LocalDateTime.now().minus(lease));
+        if (released > 0) {
+            System.out.println("Requeued " + released + " pending trips with expired claims");
+        }
+    }
+
+    private void drainSoon() {
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            while (processBatch() == batchSize) {
+                // Keep going while the queue is backed up
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Trip ingest failed: " + e.getMessage());
+        } finally {
+            draining.set(false);
+        }
+    }
+
+    private record Estimated(PendingTrip pending, Trip trip) {
+    }
+
+    // Thrown to roll back a save whose claim was taken over
+    private static final class ClaimLostException extends RuntimeException {
+        ClaimLostException(long id) {
+            super("Claim on pending trip " + id + " was lost");
+        }
+    }
+
+    /**
+     * Claims, estimates and saves one batch of pending trips.
+     *
+     * @return the number of pending trips found, claimed or not
+     */
+    public int processBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = pendingTripRepository.findReadyIds(now, Limit.of(batchSize));
+        String claim = instanceId + "-" + batches.incrementAndGet();
+        List<Long> claimed = new ArrayList<>();
+        for (Long id : ids) {
+            // Another instance may be draining the same queue
+            if (pendingTripRepository.claim(id, claim, now) == 1) {
+                claimed.add(id);
+            }
+        }
+        if (claimed.isEmpty()) {
+            return ids.size();
+        }
+
+        Semaphore permits = new Semaphore(maxConcurrency);
+        List<PendingTrip> pendingTrips = pendingTripRepository.findAllById(claimed);
+        List<CompletableFuture<Trip>> futures = new ArrayList<>();
+        for (PendingTrip pending : pendingTrips) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                permits.acquireUninterruptibly();
+                try {
+                    return estimate(pending);
+                } finally {
+                    permits.release();
+                }
+            }, executor));
+        }
+
+        List<Estimated> estimated = new ArrayList<>();
+        for (int i = 0; i < pendingTrips.size(); i++) {
+            PendingTrip pending = pendingTrips.get(i);
+            try {
+                estimated.add(new Estimated(pending, futures.get(i).join()));
+            } catch (CompletionException e) {
+                settleFailure(pending, claim, e.getCause());
+            }
+        }
+
+        try {
+            save(estimated, claim);
+        } catch (RuntimeException e) {
+            // Find the trips that cannot be saved instead of failing them all
+            for (Estimated single : estimated) {
+                try {
+                    save(List.of(new Estimated(single.pending(), copy(single.trip()))), claim);
+                } catch (ClaimLostException lost) {
+                    // The row belongs to whoever claimed it since
+                } catch (RuntimeException singleFailure) {
+                    settleFailure(single.pending(), claim, singleFailure);
+                }
+            }
+        }
+        return ids.size();
+    }
+
+    /**
+     * Fails a trip that cannot be registered, or requeues it with backoff if
+     * the failure may be temporary and attempts remain.
+     */
+    private void settleFailure(PendingTrip pending, String claim, Throwable failure) {
+        String error = String.valueOf(failure.getMessage());
+        // The claim has already counted this attempt
+        int attempts = pending.getAttempts();
+        if (isPermanent(failure) || attempts >= maxAttempts) {
+            pendingTripRepository.fail(pending.getId(), claim, error, LocalDateTime.now());
+            return;
+        }
+        Duration backoff = retryBackoff.multipliedBy(1L << Math.min(Math.max(attempts - 1, 0), 16));
+        pendingTripRepository.retry(pending.getId(), claim, error, LocalDateTime.now().plus(backoff));
+    }
+
+    // Invalid trips, e.g. a removed vehicle or a mode with no route, fail the
+    // same way every time. Directions that failed or timed out do not.
+    private static boolean isPermanent(Throwable failure) {
+        return failure instanceof IllegalArgumentException
+                || failure instanceof NoSuchElementException;
+    }
+
+    private Trip estimate(PendingTrip pending) {
+        User user = userRepository.findById(pending.getUserId()).orElseThrow();
+        return transportService.estimateTrip(
+                user,
+                pending.getOrigin(),
+                pending.getDestination(),
+                pending.getMode(),
+                pending.getVehicleId() == null ? null : pending.getVehicleId().toString());
+    }
+
+    private void save(List<Estimated> batch, String claim) {
+        transactionTemplate.executeWithoutResult(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            for (Estimated estimated : batch) {
+                long id = estimated.pending().getId();
+                Trip trip = tripService.saveTrip(estimated.trip());
+                challengeStatusService.recordTrip(trip.getUser(), trip);
+                if (pendingTripRepository.complete(id, claim, trip.getId(), now) == 0) {
+                    throw new ClaimLostException(id);
+                }
+            }
+        });
+        for (Estimated estimated : batch) {
+            transportService.recordAddresses(estimated.trip());
+        }
+    }
+
+    // A trip from a rolled back insert keeps its id, so retry with a fresh one
+    private static Trip copy(Trip trip) {
+        return new Trip(
+                trip.getUser(),
+                trip.getOrigin(),
+                trip.getDestination(),
+                trip.getTravelMode(),
+                trip.getVehicle(),
+                trip.getTotalDistanceKm(),
+                trip.getTotalDurationSeconds(),
+                trip.getTotalEmissionsCO2eKg(),
+                trip.getSavedEmissionsCO2eKg());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -2,12 +2,24 @@ package com.example.demo.service;
 
 import com.example.demo.model.Trip;
 
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 
 public interface TripService {
     Trip registerTrip(Trip trip);
 
+    /**
+     * Saves a new trip and updates the projections derived from trips in
+     * the same transaction.
+     */
+    Trip saveTrip(Trip trip);
+
     Trip getTrip(long id);
 
     Double getUserTotalEmission(long userId);
@@ -19,4 +31,93 @@ public interface TripService {
     void deleteUserEmissions(long userId);
 
     Trip updateTrip(Long tripId, Trip trip);
+
+    /**
+     * A page of trips, and the cursor of the next page or null if this is
+     * the last one.
+     */
+    record TripPage(List<Trip> trips, String nextCursor) {
+    }
+
+    /**
+     * Gets a page of a user's trips, newest first.
+     *
+     * @param cursor the nextCursor of the previous page, or null
+     * @param mode   only trips with this travel mode, or null for all
+     * @param from   first day of trips to include, or null
+     * @param to     last day of trips to include, or null
+     * @throws NoSuchElementException   if the user is not found
+     * @throws IllegalArgumentException if the cursor is not valid
+     */
+    TripPage getTripsPage(
+            long userId,
+            int limit,
+            String cursor,
+            String mode,
+            LocalDate from,
+            LocalDate to);
+
+    enum TimeBucket {
+        DAY,
+        WEEK,
+        MONTH;
+
+        /** Gets the first day of the bucket containing a day. */
+        public LocalDate start(LocalDate day) {
+            return switch (this) {
+                case DAY -> day;
+                case WEEK -> day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MONTH -> day.withDayOfMonth(1);
+            };
+        }
+
+        /** Gets the number of buckets from the bucket starting at first to day. */
+        public long index(LocalDate first, LocalDate day) {
+            return switch (this) {
+                case DAY -> ChronoUnit.DAYS.between(first, day);
+                case WEEK -> ChronoUnit.WEEKS.between(first, day);
+                case MONTH -> ChronoUnit.MONTHS.between(YearMonth.from(first), YearMonth.from(day));
+            };
+        }
+
+        public LocalDate plus(LocalDate first, long buckets) {
+            return switch (this) {
+                case DAY -> first.plusDays(buckets);
+                case WEEK -> first.plusWeeks(buckets);
+                case MONTH -> first.plusMonths(buckets);
+            };
+        }
+    }
+
+    /**
+     * Trip sums over consecutive time buckets, one array element per point.
+     * A point covers bucketsPerPoint buckets starting at its start day.
+     */
+    record EmissionsTimeSeries(
+            String bucket,
+            long bucketsPerPoint,
+            List<LocalDate> start,
+            long[] trips,
+            double[] distanceKm,
+            double[] emissionsCO2eKg,
+            double[] savedEmissionsCO2eKg) {
+    }
+
+    /**
+     * Gets a user's trip sums per bucket between two days (inclusive), read
+     * from the daily rollup. When there are more buckets than maxPoints,
+     * adjacent buckets are merged.
+     *
+     * @param to   last day, or null for today
+     * @param from first day, or null for one year before to
+     *
+     * @throws NoSuchElementException   if the user is not found
+     * @throws IllegalArgumentException if from is after to
+     */
+    EmissionsTimeSeries getEmissionsTimeSeries(
+            long userId,
+            LocalDate from,
+            LocalDate to,
+            TimeBucket bucket,
+            int maxPoints);
 }
@@ -2,14 +2,28 @@ package com.example.demo.service;
 
 import com.example.demo.model.Trip;
 import com.example.demo.model.User;
+import com.example.demo.model.UserDailyTripStats;
 import com.example.demo.repository.TripRepository;
+import com.example.demo.repository.UserDailyTripStatsRepository;
 import com.example.demo.repository.UserRepository;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 @Service
 public class TripServiceImpl implements TripService {
@@ -18,18 +32,41 @@ public class TripServiceImpl implements TripService {
 
     private final UserRepository userRepository;
 
-    public TripServiceImpl(TripRepository tripRepository, UserRepository userRepository) {
+    private final UserDailyTripStatsRepository dailyStatsRepository;
+
+    private final DailyTripRollup dailyTripRollup;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public TripServiceImpl(
+            TripRepository tripRepository,
+            UserRepository userRepository,
+            UserDailyTripStatsRepository dailyStatsRepository,
+            DailyTripRollup dailyTripRollup,
+            ApplicationEventPublisher eventPublisher) {
         this.tripRepository = tripRepository;
         this.userRepository = userRepository;
+        this.dailyStatsRepository = dailyStatsRepository;
+        this.dailyTripRollup = dailyTripRollup;
+        this.eventPublisher = eventPublisher;
     }
 
     @Override
+    @Transactional
     public Trip registerTrip(Trip trip) {
         if (tripRepository.findByUser(trip.getUser()) != null) {
             throw new RuntimeException("User already has a trip");
         }
 
-        return tripRepository.save(trip);
+        return saveTrip(trip);
+    }
+
+    @Override
+    @Transactional
+    public Trip saveTrip(Trip trip) {
+        Trip saved = tripRepository.save(trip);
+        eventPublisher.publishEvent(TripChangedEvent.added(saved));
+        return saved;
     }
 
     @Override
@@ -62,11 +99,90 @@ public class TripServiceImpl implements TripService {
         return tripRepository.findAllTripsByUser(user);
     }
 
+    // Bounds for open ended ranges, within what every database can store
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1, 1, 1, 0, 0);
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 1, 1, 0, 0);
+
+    @Override
+    public TripPage getTripsPage(
+            long userId,
+            int limit,
+            String cursor,
+            String mode,
+            LocalDate from,
+            LocalDate to) {
+        if (!userRepository.existsById(userId)) {
+            throw new NoSuchElementException("User not found");
+        }
+        LocalDateTime beforeCreatedAt = to != null ? to.plusDays(1).atStartOfDay() : LATEST;
+        long beforeId = 0;
+        if (cursor != null) {
+            String[] position = decodeCursor(cursor);
+            LocalDateTime cursorCreatedAt = LocalDateTime.parse(position[0]);
+            // Only move forward, even if the range changed between pages
+            if (!cursorCreatedAt.isAfter(beforeCreatedAt)) {
+                beforeCreatedAt = cursorCreatedAt;
+                beforeId = Long.parseLong(position[1]);
+            }
+        }
+
+        // One extra row tells whether there is a next page
+        List<Trip> trips = tripRepository.findPageByUser(
+                userId,
+                from != null ? from.atStartOfDay() : EARLIEST,
+                beforeCreatedAt,
+                beforeId,
+                mode,
+                Limit.of(limit + 1));
+        if (trips.size() <= limit) {
+            return new TripPage(trips, null);
+        }
+        trips = trips.subList(0, limit);
+        Trip last = trips.get(limit - 1);
+        return new TripPage(trips, encodeCursor(last.getCreatedAt() + "\n" + last.getId()));
+    }
+
+    private static String encodeCursor(String position) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+                    .split("\n");
+            if (position.length != 2) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            LocalDateTime.parse(position[0]);
+            Long.parseLong(position[1]);
+            return position;
+        } catch (DateTimeParseException e) {
+            // IllegalArgumentException covers bad base64 and numbers too
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    @Transactional
     public void deleteUserEmissions(long userId) {
-        User user = userRepository.findById(userId).orElseThrow(() -> new NoSuchElementException("User not found"));
+        // Locked like the rollup writes, so the sums match the deleted trips
+        User user = userRepository.lockById(userId).orElseThrow(() -> new NoSuchElementException("User not found"));
+        TripRepository.TripTotalsRow total = tripRepository.getTripTotalsByUserId(userId);
+        if (total.trips() == 0) {
+            return;
+        }
+        Map<LocalDate, UserTripsRemovedEvent.TripSums> days = new HashMap<>();
+        for (UserDailyTripStats day : dailyStatsRepository.findByUserId(userId)) {
+            days.put(day.getDay(), UserTripsRemovedEvent.TripSums.of(day));
+        }
         tripRepository.deleteUserTrip(user);
+        eventPublisher.publishEvent(new UserTripsRemovedEvent(
+                userId,
+                UserTripsRemovedEvent.TripSums.of(total),
+                days));
     }
 
+    @Transactional
     public Trip updateTrip(Long tripId, Trip updatedTrip
     ) {
         Optional<Trip> optExistingTrip = tripRepository.findById(tripId);
@@ -74,6 +190,7 @@ public class TripServiceImpl implements TripService {
             throw new RuntimeException("Trip not found");
         }
         Trip existingTrip = optExistingTrip.get();
+        TripChangedEvent.TripFigures before = TripChangedEvent.TripFigures.of(existingTrip);
         existingTrip.setTotalDistanceKm(updatedTrip.getTotalDistanceKm());
         existingTrip.setTotalDurationSeconds(updatedTrip.getTotalDurationSeconds());
         existingTrip.setTotalEmissionsCO2eKg(updatedTrip.getTotalEmissionsCO2eKg());
@@ -85,12 +202,64 @@ public class TripServiceImpl implements TripService {
         existingTrip.setTransportationMode(updatedTrip.getTransportationMode());
         existingTrip.setUser(updatedTrip.getUser());
         existingTrip.setMoneySaved(updatedTrip.getMoneySaved());
-        return tripRepository.save(existingTrip);
+        Trip saved = tripRepository.save(existingTrip);
+        eventPublisher.publishEvent(TripChangedEvent.updated(before, saved));
+        return saved;
     }
 
 
-}
-
 
+    @Override
+    public EmissionsTimeSeries getEmissionsTimeSeries(
+            long userId,
+            LocalDate from,
+            LocalDate to,
+            TimeBucket bucket,
+            int maxPoints) {
+        if (!userRepository.existsById(userId)) {
+            throw new NoSuchElementException("User not found");
+        }
+        if (to == null) {
+            to = dailyTripRollup.today();
+        }
+        if (from == null) {
+            from = to.minusYears(1).plusDays(1);
+        }
+        if (maxPoints < 1) {
+            throw new IllegalArgumentException("maxPoints must be positive");
+        }
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        LocalDate first = bucket.start(from);
+        long buckets = bucket.index(first, to) + 1;
+        long bucketsPerPoint = (buckets + maxPoints - 1) / maxPoints;
+        int points = (int) ((buckets + bucketsPerPoint - 1) / bucketsPerPoint);
 
+        long[] trips = new long[points];
+        double[] distanceKm = new double[points];
+        double[] emissions = new double[points];
+        double[] savedEmissions = new double[points];
+        // At most one row per day, and only for days with trips
+        for (UserDailyTripStats day : dailyStatsRepository.findByUserIdAndDayBetween(userId, from, to)) {
+            int point = (int) (bucket.index(first, day.getDay()) / bucketsPerPoint);
+            trips[point] += day.getTrips();
+            distanceKm[point] += day.getDistanceKm();
+            emissions[point] += day.getEmissionsCO2eKg();
+            savedEmissions[point] += day.getSavedEmissionsCO2eKg();
+        }
 
+        List<LocalDate> starts = new ArrayList<>(points);
+        for (int point = 0; point < points; point++) {
+            starts.add(bucket.plus(first, point * bucketsPerPoint));
+        }
+        return new EmissionsTimeSeries(
+                bucket.name().toLowerCase(Locale.ROOT),
+                bucketsPerPoint,
+                starts,
+                trips,
+                distanceKm,
+                emissions,
+                savedEmissions);
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.demo.service;
+
+import com.example.demo.service.TripChangedEvent.TripFigures;
+import java.util.List;
+
+/**
+ * Published for each chunk of trips written by a bulk import, which bypasses
+ * {@link TripService} and so does not publish a {@link TripChangedEvent} per
+ * trip. Listeners add the trips to their projections in one pass.
+ */
+public record TripsImportedEvent(List<TripFigures> trips) {
+}
@@ -18,17 +18,20 @@ public class UserServiceImpl implements UserService {
     private final CosmeticsRepository cosmeticsRepository;
 
     private final BCryptPasswordEncoder bCryptPasswordEncoder;
+    private final GlobalStatisticsCounters globalStatistics;
 
     public UserServiceImpl(
 
         UserRepository userRepository,
         CosmeticsRepository cosmeticsRepository,
-        BCryptPasswordEncoder bCryptPasswordEncoder
+        BCryptPasswordEncoder bCryptPasswordEncoder,
+        GlobalStatisticsCounters globalStatistics
     ) {
 
         this.userRepository = userRepository;
         this.cosmeticsRepository = cosmeticsRepository;
         this.bCryptPasswordEncoder = bCryptPasswordEncoder;
+        this.globalStatistics = globalStatistics;
     }
 
     @Override
@@ -52,7 +55,9 @@ public class UserServiceImpl implements UserService {
 
         user.setEquippedBorder(defaultBorder);
         user.setEquippedProfilePicture(defaultProfilePicture);
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        globalStatistics.userAdded();
+        return saved;
     }
 
     @Override
@@ -92,6 +97,7 @@ public class UserServiceImpl implements UserService {
                 .orElseThrow(() -> new NoSuchElementException(
                         "User with id: " + id + " was not found"));
         userRepository.delete(user);
+        globalStatistics.userRemoved();
         return "User with id: " + id + " was successfully deleted";
     }
 
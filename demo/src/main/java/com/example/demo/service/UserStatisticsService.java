@@ -0,0 +1,189 @@
+package com.example.demo.service;
+
+import com.example.demo.model.UserStatistics;
+import com.example.demo.repository.TripRepository;
+import com.example.demo.repository.UserRepository;
+import com.example.demo.repository.UserStatisticsRepository;
+import com.example.demo.service.TransportService.Statistics;
+import com.example.demo.service.TripChangedEvent.TripFigures;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Per-user trip statistics from the {@link UserStatistics} running totals.
+ *
+ * Totals are adjusted in the same transaction as the trip write, and the
+ * cached statistics of the user are evicted once it commits. Users whose
+ * totals do not exist yet get them computed from their trips on first read;
+ * both paths lock the user row, so a trip is never counted twice or missed.
+ */
+@Service
+public class UserStatisticsService {
+
+    private final UserStatisticsRepository statisticsRepository;
+    private final TripRepository tripRepository;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Cache<Long, Statistics> cache;
+
+    public UserStatisticsService(
+            UserStatisticsRepository statisticsRepository,
+            TripRepository tripRepository,
+            UserRepository userRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${transport.statistics.cache.max-size:10000}") long maxSize,
+            @Value("${transport.statistics.cache.ttl-minutes:60}") long ttlMinutes) {
+        this.statisticsRepository = statisticsRepository;
+        this.tripRepository = tripRepository;
+        this.userRepository = userRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                // Eviction on write keeps entries fresh, the TTL is a backstop
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .build();
+    }
+
+    public Statistics getStatistics(long userId) {
+        return cache.get(userId, this::load);
+    }
+
+    private Statistics load(long userId) {
+        UserStatistics statistics = statisticsRepository.findById(userId)
+                .orElseGet(() -> transactionTemplate.execute(status -> backfill(userId)));
+        return new Statistics(
+                // Transport
+                (int) statistics.getTrips(),
+                statistics.getDistanceKm(),
+                statistics.getDurationSeconds(),
+                // Emissions
+                statistics.getEmissionsCO2eKg(),
+                statistics.getSavedEmissionsCO2eKg(),
+                // Financial
+                // TODO: calculate
+                0.0,
+                0.0);
+    }
+
+    private UserStatistics backfill(long userId) {
+        // Trip writes lock the user too, so no trip can be counted twice
+        if (userRepository.lockById(userId).isEmpty()) {
+            throw new NoSuchElementException("User with id: " + userId + " was not found");
+        }
+        UserStatistics existing = statisticsRepository.findById(userId).orElse(null);
+        if (existing != null) {
+            return existing;
+        }
+        TripRepository.TripTotalsRow totals = tripRepository.getTripTotalsByUserId(userId);
+        return statisticsRepository.save(new UserStatistics(
+                userId,
+                totals.trips(),
+                totals.distanceKm(),
+                totals.durationSeconds(),
+                totals.emissionsCO2eKg(),
+                totals.savedEmissionsCO2eKg()));
+    }
+
+    @EventListener
+    @Transactional
+    public void onTripChanged(TripChangedEvent event) {
+        if (event.before() != null) {
+            apply(event.before(), -1);
+        }
+        if (event.after() != null) {
+            apply(event.after(), 1);
+        }
+    }
+
+    private void apply(TripFigures trip, int sign) {
+        if (trip.userId() == null || userRepository.lockById(trip.userId()).isEmpty()) {
+            return;
+        }
+        UserStatistics statistics = statisticsRepository.findById(trip.userId()).orElse(null);
+        if (statistics == null) {
+            // Computed from the trips on first read, which will include this
+            return;
+        }
+        statistics.add(
+                trip.distanceKm(),
+                trip.durationSeconds(),
+                trip.emissionsCO2eKg(),
+                trip.savedEmissionsCO2eKg(),
+                sign);
+        statisticsRepository.save(statistics);
+    }
+
+    @EventListener
+    @Transactional
+    public void onTripsImported(TripsImportedEvent event) {
+        // In id order, so two imports cannot deadlock on the user locks
+        Map<Long, List<TripFigures>> byUser = event.trips().stream()
+                .collect(Collectors.groupingBy(TripFigures::userId, TreeMap::new, Collectors.toList()));
+        byUser.forEach((userId, trips) -> {
+            if (userRepository.lockById(userId).isEmpty()) {
+                return;
+            }
+            statisticsRepository.findById(userId).ifPresent(statistics -> {
+                for (TripFigures trip : trips) {
+                    statistics.add(
+                            trip.distanceKm(),
+                            trip.durationSeconds(),
+                            trip.emissionsCO2eKg(),
+                            trip.savedEmissionsCO2eKg(),
+                            1);
+                }
+                statisticsRepository.save(statistics);
+            });
+        });
+    }
+
+    @EventListener
+    @Transactional
+    public void onUserTripsRemoved(UserTripsRemovedEvent event) {
+        if (userRepository.lockById(event.userId()).isEmpty()) {
+            return;
+        }
+        // The user has no trips left, so the totals are recomputed as zero
+        // on the next read
+        statisticsRepository.findById(event.userId()).ifPresent(statisticsRepository::delete);
+    }
+
+    // Before DataVersions bumps the tag, so the new tag never serves the old body
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void evict(TripsImportedEvent event) {
+        event.trips().forEach(trip -> cache.invalidate(trip.userId()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void evict(TripChangedEvent event) {
+        if (event.before() != null && event.before().userId() != null) {
+            cache.invalidate(event.before().userId());
+        }
+        if (event.after() != null && event.after().userId() != null) {
+            cache.invalidate(event.after().userId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void evict(UserTripsRemovedEvent event) {
+        cache.invalidate(event.userId());
+    }
+}
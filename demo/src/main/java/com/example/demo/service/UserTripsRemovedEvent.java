@@ -0,0 +1,47 @@
+package com.example.demo.service;
+
+import com.example.demo.model.UserDailyTripStats;
+import com.example.demo.repository.TripRepository;
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Published when all trips of a user are removed in one statement, instead
+ * of a {@link TripChangedEvent} per trip. It carries the sums of the removed
+ * trips, in total and per rollup day, so listeners can take them out of
+ * their projections without visiting each trip.
+ */
+public record UserTripsRemovedEvent(long userId, TripSums total, Map<LocalDate, TripSums> days) {
+
+    public record TripSums(
+            long trips,
+            double distanceKm,
+            double durationSeconds,
+            double emissionsCO2eKg,
+            double savedEmissionsCO2eKg,
+            double emissionsPerKmSum,
+            long emissionsPerKmCount) {
+
+        public static TripSums of(TripRepository.TripTotalsRow totals) {
+            return new TripSums(
+                    totals.trips(),
+                    totals.distanceKm(),
+                    totals.durationSeconds(),
+                    totals.emissionsCO2eKg(),
+                    totals.savedEmissionsCO2eKg(),
+                    totals.emissionsPerKmSum(),
+                    totals.emissionsPerKmCount());
+        }
+
+        public static TripSums of(UserDailyTripStats day) {
+            return new TripSums(
+                    day.getTrips(),
+                    day.getDistanceKm(),
+                    day.getDurationSeconds(),
+                    day.getEmissionsCO2eKg(),
+                    day.getSavedEmissionsCO2eKg(),
+                    day.getEmissionsPerKmSum(),
+                    day.getEmissionsPerKmCount());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.demo;
+
+import com.example.demo.service.AddressIndex;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AddressIndexTests {
+
+    @Test
+    void suggestsMatchingAddressesByUsage() {
+        AddressIndex index = new AddressIndex(null, 100, 1000);
+        index.recordUse("Bergen Busstasjon");
+        index.recordUse("Bergen Sentrum");
+        index.recordUse("Bergen Sentrum");
+        index.recordUse("Fana");
+        index.recordSuggestions(List.of("Bergen Lufthavn"));
+
+        assertEquals(
+                List.of("Bergen Sentrum", "Bergen Busstasjon", "Bergen Lufthavn"),
+                index.suggest("  bergen", 5));
+        assertEquals(List.of("Bergen Sentrum"), index.suggest("BERGEN S", 5));
+        assertEquals(List.of("Bergen Sentrum"), index.suggest("bergen", 1));
+        assertTrue(index.suggest("oslo", 5).isEmpty());
+    }
+
+    @Test
+    void evictsLeastUsedAddressesWhenFull() {
+        AddressIndex index = new AddressIndex(null, 10, 1000);
+        index.recordUse("Fana");
+        index.recordUse("Fana");
+        for (int i = 0; i < 20; i++) {
+            index.recordSuggestions(List.of("Address " + i));
+        }
+
+        assertTrue(index.size() <= 10);
+        assertEquals(List.of("Fana"), index.suggest("fana", 5));
+    }
+}
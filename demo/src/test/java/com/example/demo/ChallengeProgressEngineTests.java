@@ -0,0 +1,83 @@
+package com.example.demo;
+
+import com.example.demo.model.Challenge;
+import com.example.demo.model.Challenge.ChallengeType;
+import com.example.demo.model.ChallengeStatus;
+import com.example.demo.model.ChallengeStatus.Status;
+import com.example.demo.model.User;
+import com.example.demo.repository.ChallengeRepository;
+import com.example.demo.repository.ChallengeStatusRepository;
+import com.example.demo.repository.UserRepository;
+import com.example.demo.service.ChallengeProgressEngine;
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:testdb-challenge-progress",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=password",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+})
+class ChallengeProgressEngineTests {
+
+    @Autowired
+    private ChallengeProgressEngine engine;
+
+    @Autowired
+    private ChallengeRepository challengeRepository;
+
+    @Autowired
+    private ChallengeStatusRepository statusRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private User ada;
+
+    @BeforeEach
+    void setUp() {
+        statusRepository.deleteAll();
+        challengeRepository.deleteAll();
+        userRepository.deleteAll();
+        ada = userRepository.save(new User("Ada", "A", "ada", "ada@example.com", "pw", 0));
+    }
+
+    private ChallengeStatus status(ChallengeType type, double target, int reward, Status status, double value) {
+        Challenge challenge = challengeRepository.save(
+                new Challenge("Challenge", "", reward, 7, type, target, type == ChallengeType.METRIC ? "kg" : "trips"));
+        return statusRepository.save(new ChallengeStatus(
+                ada.getId(), challenge, status, LocalDateTime.now(), null, value, 0, 0, null, null));
+    }
+
+    @Test
+    void appliesATripToAllUnfinishedChallenges() {
+        ChallengeStatus metric = status(ChallengeType.METRIC, 5, 10, Status.IN_PROGRESS, 2);
+        ChallengeStatus firstTrip = status(ChallengeType.ACTION, 1, 20, Status.NOT_STARTED, 0);
+        ChallengeStatus threeTrips = status(ChallengeType.ACTION, 3, 40, Status.NOT_STARTED, 0);
+        ChallengeStatus done = status(ChallengeType.ACTION, 1, 80, Status.COMPLETED, 1);
+
+        engine.recordTrip(ada.getId(), 4.0);
+
+        metric = statusRepository.findById(metric.getChallengeStatusId()).orElseThrow();
+        assertEquals(Status.COMPLETED, metric.getStatus());
+        assertEquals(5.0, metric.getCurrentValue(), 1e-9);
+        assertNotNull(metric.getCompletedAt());
+        assertEquals(Status.COMPLETED,
+                statusRepository.findById(firstTrip.getChallengeStatusId()).orElseThrow().getStatus());
+        threeTrips = statusRepository.findById(threeTrips.getChallengeStatusId()).orElseThrow();
+        assertEquals(Status.IN_PROGRESS, threeTrips.getStatus());
+        assertEquals(1.0, threeTrips.getCurrentValue(), 1e-9);
+        assertEquals(1.0, statusRepository.findById(done.getChallengeStatusId()).orElseThrow().getCurrentValue(), 1e-9);
+        assertEquals(30, userRepository.findById(ada.getId()).orElseThrow().getPoints());
+    }
+}
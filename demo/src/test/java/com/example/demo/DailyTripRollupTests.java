@@ -0,0 +1,109 @@
+package com.example.demo;
+
+import com.example.demo.model.Trip;
+import com.example.demo.model.User;
+import com.example.demo.model.UserDailyTripStats;
+import com.example.demo.repository.TripRepository;
+import com.example.demo.repository.UserDailyTripStatsRepository;
+import com.example.demo.repository.UserRepository;
+import com.example.demo.service.DailyTripRollup;
+import com.example.demo.service.LeaderboardEngine;
+import com.example.demo.service.TransportService.LeaderboardMetric;
+import com.example.demo.service.TransportService.LeaderboardPeriod;
+import com.example.demo.service.TripService;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:testdb-rollup",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=password",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+})
+class DailyTripRollupTests {
+
+    @Autowired
+    private DailyTripRollup rollup;
+
+    @Autowired
+    private TripService tripService;
+
+    @Autowired
+    private UserDailyTripStatsRepository statsRepository;
+
+    @Autowired
+    private TripRepository tripRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private LeaderboardEngine leaderboardEngine;
+
+    private User ada;
+    private User bob;
+
+    @BeforeEach
+    void setUp() {
+        tripRepository.deleteAll();
+        statsRepository.deleteAll();
+        userRepository.deleteAll();
+        ada = userRepository.save(new User("Ada", "A", "ada", "ada@example.com", "pw", 0));
+        bob = userRepository.save(new User("Bob", "B", "bob", "bob@example.com", "pw", 0));
+    }
+
+    private UserDailyTripStats today(User user) {
+        return statsRepository.findByUserIdAndDay(user.getId(), rollup.today()).orElseThrow();
+    }
+
+    @Test
+    void tripWritesUpdateTheRollup() {
+        Trip trip = tripService.registerTrip(new Trip(ada, "A", "B", "driving", null, 10, 600, 2.0, 0.5));
+        tripService.registerTrip(new Trip(bob, "A", "B", "walking", null, 5, 3600, 0.0, 1.0));
+
+        assertEquals(1, today(ada).getTrips());
+        assertEquals(2.0, today(ada).getEmissionsCO2eKg(), 1e-9);
+
+        tripService.updateTrip(trip.getId(), new Trip(ada, "A", "B", "driving", null, 20, 1200, 4.0, 0.5));
+
+        UserDailyTripStats stats = today(ada);
+        assertEquals(1, stats.getTrips());
+        assertEquals(20.0, stats.getDistanceKm(), 1e-9);
+        assertEquals(4.0, stats.getEmissionsCO2eKg(), 1e-9);
+        assertEquals(2, rollup.getDailyStatsSince(rollup.today()).size());
+
+        tripService.deleteUserEmissions(ada.getId());
+
+        assertTrue(statsRepository.findByUserIdAndDay(ada.getId(), rollup.today()).isEmpty());
+        assertEquals(1, statsRepository.count());
+    }
+
+    @Test
+    void backfillRebuildsTheRollupFromTrips() {
+        tripRepository.save(new Trip(ada, "A", "B", "driving", null, 10, 600, 2.0, 0.5));
+        tripRepository.save(new Trip(ada, "B", "A", "driving", null, 10, 600, 2.0, 0.5));
+        tripRepository.save(new Trip(bob, "A", "B", "walking", null, 5, 3600, 0.0, 1.0));
+
+        assertEquals(2, rollup.backfill());
+
+        UserDailyTripStats stats = today(ada);
+        assertEquals(2, stats.getTrips());
+        assertEquals(4.0, stats.getEmissionsCO2eKg(), 1e-9);
+        assertEquals(1.0, stats.getSavedEmissionsCO2eKg(), 1e-9);
+
+        // The period leaderboards are reloaded from the rebuilt rollup
+        List<UserRepository.LeaderboardRow> week = leaderboardEngine.getLeaderboard(
+                LeaderboardMetric.TOTAL_DISTANCE_KILOMETERS, LeaderboardPeriod.PAST_WEEK, 10, null).rows();
+        assertEquals(List.of("ada", "bob"), week.stream().map(UserRepository.LeaderboardRow::username).toList());
+    }
+}
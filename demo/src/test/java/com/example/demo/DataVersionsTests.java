@@ -0,0 +1,38 @@
+package com.example.demo;
+
+import com.example.demo.service.DataVersions;
+import com.example.demo.service.TripChangedEvent;
+import com.example.demo.service.TripChangedEvent.TripFigures;
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class DataVersionsTests {
+
+    @Test
+    void userTagChangesOnlyForTheUsersTrips() {
+        DataVersions versions = new DataVersions();
+        String ada = versions.userTag(1);
+        String bob = versions.userTag(2);
+
+        versions.onTripChanged(new TripChangedEvent(null,
+                new TripFigures(1, 1L, LocalDateTime.now(), "driving", 10, 600, 1.0, 0)));
+
+        assertNotEquals(ada, versions.userTag(1));
+        assertEquals(bob, versions.userTag(2));
+    }
+
+    @Test
+    void invalidateAllChangesEveryTag() {
+        DataVersions versions = new DataVersions();
+        String ada = versions.userTag(1);
+        String leaderboard = versions.tag("lb", 7);
+
+        versions.invalidateAll();
+
+        assertNotEquals(ada, versions.userTag(1));
+        assertNotEquals(leaderboard, versions.tag("lb", 7));
+    }
+}
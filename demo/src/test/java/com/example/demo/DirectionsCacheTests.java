@@ -0,0 +1,46 @@
+package com.example.demo;
+
+import com.example.demo.service.DirectionsCache;
+import com.example.demo.service.DirectionsKey;
+import com.google.maps.model.DirectionsResult;
+import com.google.maps.model.TravelMode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class DirectionsCacheTests {
+
+    @Test
+    void keysAreNormalized() {
+        assertEquals(
+                DirectionsKey.of("Bergen  Sentrum ", "Fana", TravelMode.DRIVING),
+                DirectionsKey.of("bergen sentrum", " FANA", TravelMode.DRIVING));
+    }
+
+    @Test
+    void cachesResultsAndRecordsStats() {
+        DirectionsCache cache = new DirectionsCache(100, 60, 60, 60, 10);
+        DirectionsKey key = DirectionsKey.of("Bergen", "Fana", TravelMode.WALKING);
+        DirectionsResult result = new DirectionsResult();
+
+        assertNull(cache.get(key));
+        cache.put(key, result);
+        assertSame(result, cache.get(key));
+
+        DirectionsCache.Stats stats = cache.stats();
+        assertEquals(1, stats.hitCount());
+        assertEquals(1, stats.missCount());
+    }
+
+    @Test
+    void zeroTtlModesAreNotCached() {
+        DirectionsCache cache = new DirectionsCache(100, 60, 60, 60, 0);
+        DirectionsKey key = DirectionsKey.of("Bergen", "Fana", TravelMode.TRANSIT);
+
+        cache.put(key, new DirectionsResult());
+
+        assertNull(cache.get(key));
+    }
+}
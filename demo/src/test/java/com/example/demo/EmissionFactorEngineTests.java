@@ -0,0 +1,58 @@
+package com.example.demo;
+
+import com.example.demo.model.TransportationMode;
+import com.example.demo.repository.TransportationModeRepository;
+import com.example.demo.service.EmissionFactorEngine;
+import com.google.maps.model.TravelMode;
+import com.google.maps.model.VehicleType;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EmissionFactorEngineTests {
+
+    @Test
+    void usesDefaultFactorsBeforeLoading() {
+        EmissionFactorEngine engine = new EmissionFactorEngine(mock(TransportationModeRepository.class));
+
+        assertEquals(0.118, engine.factorKgPerKm(TravelMode.DRIVING, null), 1e-9);
+        assertEquals(0.089, engine.factorKgPerKm(TravelMode.TRANSIT, VehicleType.BUS), 1e-9);
+        assertEquals(0.0, engine.factorKgPerKm(TravelMode.TRANSIT, VehicleType.FERRY), 1e-9);
+        assertEquals(0.0, engine.factorKgPerKm(null, null), 1e-9);
+    }
+
+    @Test
+    void reloadSwapsInDatabaseFactors() {
+        TransportationModeRepository repository = mock(TransportationModeRepository.class);
+        when(repository.findAll()).thenReturn(List.of(
+                new TransportationMode("transit", 20.0),
+                new TransportationMode("transit:ferry", 300.0)));
+        EmissionFactorEngine engine = new EmissionFactorEngine(repository);
+
+        engine.reload();
+
+        assertEquals(0.3, engine.factorKgPerKm(TravelMode.TRANSIT, VehicleType.FERRY), 1e-9);
+        // Vehicle types without their own factor use the travel mode factor
+        assertEquals(0.02, engine.factorKgPerKm(TravelMode.TRANSIT, VehicleType.SUBWAY), 1e-9);
+        assertEquals(0.089, engine.factorKgPerKm(TravelMode.TRANSIT, VehicleType.BUS), 1e-9);
+    }
+
+    @Test
+    void generationFollowsFactorValues() {
+        TransportationModeRepository repository = mock(TransportationModeRepository.class);
+        EmissionFactorEngine engine = new EmissionFactorEngine(repository);
+        long defaults = engine.generation();
+
+        engine.reload();
+        assertEquals(defaults, engine.generation());
+        assertEquals(defaults, new EmissionFactorEngine(repository).generation());
+
+        when(repository.findAll()).thenReturn(List.of(new TransportationMode("driving", 120.0)));
+        engine.reload();
+        assertNotEquals(defaults, engine.generation());
+    }
+}
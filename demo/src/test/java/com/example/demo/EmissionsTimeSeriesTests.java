@@ -0,0 +1,108 @@
+package com.example.demo;
+
+import com.example.demo.model.User;
+import com.example.demo.model.UserDailyTripStats;
+import com.example.demo.repository.UserDailyTripStatsRepository;
+import com.example.demo.repository.UserRepository;
+import com.example.demo.service.TripService;
+import com.example.demo.service.TripService.EmissionsTimeSeries;
+import com.example.demo.service.TripService.TimeBucket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:testdb-timeseries",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=password",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+})
+class EmissionsTimeSeriesTests {
+
+    @Autowired
+    private TripService tripService;
+
+    @Autowired
+    private UserDailyTripStatsRepository statsRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private User ada;
+
+    @BeforeEach
+    void setUp() {
+        statsRepository.deleteAll();
+        userRepository.deleteAll();
+        ada = userRepository.save(new User("Ada", "A", "ada", "ada@example.com", "pw", 0));
+        // 2025-03-03 is a Monday
+        day(LocalDate.of(2025, 3, 3), 2.0);
+        day(LocalDate.of(2025, 3, 5), 1.0);
+        day(LocalDate.of(2025, 3, 12), 4.0);
+        day(LocalDate.of(2025, 4, 1), 8.0);
+    }
+
+    private void day(LocalDate day, double emissions) {
+        UserDailyTripStats stats = new UserDailyTripStats(ada.getId(), day);
+        stats.add(10, 600, emissions, 0.5, 1);
+        statsRepository.save(stats);
+    }
+
+    @Test
+    void sumsDaysIntoWeeks() {
+        EmissionsTimeSeries series = tripService.getEmissionsTimeSeries(
+                ada.getId(), LocalDate.of(2025, 3, 4), LocalDate.of(2025, 3, 16), TimeBucket.WEEK, 100);
+
+        assertEquals("week", series.bucket());
+        assertEquals(1, series.bucketsPerPoint());
+        assertEquals(List.of(LocalDate.of(2025, 3, 3), LocalDate.of(2025, 3, 10)), series.start());
+        // The 3rd is in the first week but before the range
+        assertArrayEquals(new long[] { 1, 1 }, series.trips());
+        assertArrayEquals(new double[] { 1.0, 4.0 }, series.emissionsCO2eKg(), 1e-9);
+    }
+
+    @Test
+    void zeroFillsAndDownsamplesDays() {
+        EmissionsTimeSeries series = tripService.getEmissionsTimeSeries(
+                ada.getId(), LocalDate.of(2025, 3, 1), LocalDate.of(2025, 4, 1), TimeBucket.DAY, 10);
+
+        // 32 days in at most 10 points
+        assertEquals(4, series.bucketsPerPoint());
+        assertEquals(8, series.start().size());
+        assertEquals(LocalDate.of(2025, 3, 29), series.start().get(7));
+        assertArrayEquals(
+                new double[] { 2.0, 1.0, 4.0, 0.0, 0.0, 0.0, 0.0, 8.0 },
+                series.emissionsCO2eKg(),
+                1e-9);
+    }
+
+    @Test
+    void sumsDaysIntoMonths() {
+        EmissionsTimeSeries series = tripService.getEmissionsTimeSeries(
+                ada.getId(), LocalDate.of(2025, 2, 15), LocalDate.of(2025, 4, 30), TimeBucket.MONTH, 100);
+
+        assertArrayEquals(new long[] { 0, 3, 1 }, series.trips());
+        assertArrayEquals(new double[] { 0.0, 7.0, 8.0 }, series.emissionsCO2eKg(), 1e-9);
+    }
+
+    @Test
+    void rejectsBadRequests() {
+        assertThrows(IllegalArgumentException.class, () -> tripService.getEmissionsTimeSeries(
+                ada.getId(), LocalDate.of(2025, 4, 1), LocalDate.of(2025, 3, 1), TimeBucket.DAY, 10));
+        assertThrows(NoSuchElementException.class, () -> tripService.getEmissionsTimeSeries(
+                ada.getId() + 1000, null, null, TimeBucket.DAY, 10));
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.demo;
+
+import com.example.demo.repository.GlobalStatisticsRepository;
+import com.example.demo.repository.TripRepository;
+import com.example.demo.repository.UserRepository;
+import com.example.demo.model.GlobalStatistics;
+import com.example.demo.service.GlobalStatisticsCounters;
+import com.example.demo.service.TripChangedEvent;
+import com.example.demo.service.TripChangedEvent.TripFigures;
+import com.example.demo.service.TripCommitGate;
+import com.example.demo.service.UserTripsRemovedEvent;
+import java.util.Map;
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GlobalStatisticsCountersTests {
+
+    private static TripFigures trip(double distanceKm, double emissions) {
+        return new TripFigures(1, 1L, LocalDateTime.now(), "driving", distanceKm, 600, emissions, 0);
+    }
+
+    @Test
+    void countsTripAndUserWrites() {
+        GlobalStatisticsCounters counters = new GlobalStatisticsCounters(
+                mock(UserRepository.class), mock(TripRepository.class), mock(GlobalStatisticsRepository.class), new TripCommitGate());
+
+        counters.userAdded();
+        counters.onTripChanged(new TripChangedEvent(null, trip(10, 1.0)));
+        counters.onTripChanged(new TripChangedEvent(trip(10, 1.0), trip(30, 3.0)));
+
+        GlobalStatisticsCounters.Totals totals = counters.totals();
+        assertEquals(1, totals.users());
+        assertEquals(1, totals.trips());
+        assertEquals(30.0, totals.distanceKm(), 1e-9);
+        assertEquals(3.0, totals.emissionsCO2eKg(), 1e-9);
+    }
+
+    @Test
+    void subtractsAllTripsOfARemovedUser() {
+        GlobalStatisticsCounters counters = new GlobalStatisticsCounters(
+                mock(UserRepository.class), mock(TripRepository.class), mock(GlobalStatisticsRepository.class), new TripCommitGate());
+        counters.onTripChanged(new TripChangedEvent(null, trip(10, 1.0)));
+        counters.onTripChanged(new TripChangedEvent(null, trip(30, 3.0)));
+        counters.onTripChanged(new TripChangedEvent(null, trip(5, 0.5)));
+
+        counters.onUserTripsRemoved(new UserTripsRemovedEvent(
+                1, new UserTripsRemovedEvent.TripSums(2, 40, 1200, 4.0, 0, 0.2, 2), Map.of()));
+
+        GlobalStatisticsCounters.Totals totals = counters.totals();
+        assertEquals(1, totals.trips());
+        assertEquals(5.0, totals.distanceKm(), 1e-9);
+        assertEquals(0.5, totals.emissionsCO2eKg(), 1e-9);
+    }
+
+    @Test
+    void reconcileCorrectsDrift() {
+        UserRepository userRepository = mock(UserRepository.class);
+        TripRepository tripRepository = mock(TripRepository.class);
+        when(userRepository.count()).thenReturn(4L);
+        when(tripRepository.count()).thenReturn(7L);
+        when(tripRepository.sumTotalDistanceKm()).thenReturn(70.0);
+        when(tripRepository.sumTotalEmissionsCO2eKg()).thenReturn(7.5);
+        GlobalStatisticsCounters counters = new GlobalStatisticsCounters(
+                userRepository, tripRepository, mock(GlobalStatisticsRepository.class), new TripCommitGate());
+        counters.onTripChanged(new TripChangedEvent(null, trip(10, 1.0)));
+
+        counters.reconcile();
+
+        assertEquals(new GlobalStatisticsCounters.Totals(4, 7, 70.0, 7.5), counters.totals());
+    }
+
+    @Test
+    void checkpointsOnlyAfterTheFirstReconcile() {
+        GlobalStatisticsRepository checkpointRepository = mock(GlobalStatisticsRepository.class);
+        GlobalStatisticsCounters counters = new GlobalStatisticsCounters(
+                mock(UserRepository.class), mock(TripRepository.class), checkpointRepository, new TripCommitGate());
+
+        counters.checkpoint();
+        verify(checkpointRepository, never()).save(any());
+
+        counters.reconcile();
+        counters.checkpoint();
+        verify(checkpointRepository).save(any(GlobalStatistics.class));
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.demo;
+
+import com.example.demo.model.User;
+import com.example.demo.repository.UserRepository;
+import com.example.demo.service.DailyTripRollup;
+import com.example.demo.service.LeaderboardEngine;
+import com.example.demo.service.TransportService.LeaderboardMetric;
+import com.example.demo.service.TransportService.LeaderboardPeriod;
+import com.example.demo.service.TripCommitGate;
+import com.example.demo.service.TripChangedEvent;
+import com.example.demo.service.TripChangedEvent.TripFigures;
+import com.example.demo.service.UserTripsRemovedEvent;
+import com.example.demo.service.UserTripsRemovedEvent.TripSums;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LeaderboardEngineTests {
+
+    private static final LocalDate TODAY = LocalDate.of(2025, 3, 14);
+
+    private UserRepository userRepository;
+    private DailyTripRollup rollup;
+    private LeaderboardEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(new User("Ada", "A", "ada", "ada@example.com", "pw", 0)));
+        when(userRepository.findById(2L)).thenReturn(Optional.of(new User("Bob", "B", "bob", "bob@example.com", "pw", 0)));
+        rollup = mock(DailyTripRollup.class);
+        when(rollup.today()).thenReturn(TODAY);
+        when(rollup.dayOf(any())).thenAnswer(invocation -> invocation.getArgument(0, LocalDateTime.class).toLocalDate());
+        engine = new LeaderboardEngine(userRepository, rollup, new TripCommitGate());
+    }
+
+    private List<UserRepository.LeaderboardRow> lifetime(LeaderboardMetric metric) {
+        return engine.getLeaderboard(metric, LeaderboardPeriod.LIFETIME, 100, null).rows();
+    }
+
+    private static TripFigures trip(long tripId, long userId, double distanceKm, double emissions) {
+        return tripOn(TODAY, tripId, userId, distanceKm, emissions);
+    }
+
+    private static TripFigures tripOn(LocalDate day, long tripId, long userId, double distanceKm, double emissions) {
+        return new TripFigures(tripId, userId, day.atTime(12, 0), "driving", distanceKm, 600, emissions, 0);
+    }
+
+    @Test
+    void appliesAddedTripsToTheLeaderboards() {
+        engine.onTripChanged(new TripChangedEvent(null, trip(1, 1, 10, 2.0)));
+        engine.onTripChanged(new TripChangedEvent(null, trip(2, 2, 10, 1.0)));
+        engine.onTripChanged(new TripChangedEvent(null, trip(3, 1, 30, 0.0)));
+
+        List<UserRepository.LeaderboardRow> emissions = lifetime(LeaderboardMetric.TOTAL_EMISSIONS);
+        assertEquals(List.of("bob", "ada"), emissions.stream().map(UserRepository.LeaderboardRow::username).toList());
+
+        List<UserRepository.LeaderboardRow> distance = lifetime(LeaderboardMetric.TOTAL_DISTANCE_KILOMETERS);
+        assertEquals("ada", distance.get(0).username());
+        assertEquals(40.0, distance.get(0).value(), 1e-9);
+
+        // Ada averages 0.2 and 0.0 kg per km, tying with Bob on 0.1
+        List<UserRepository.LeaderboardRow> average = lifetime(LeaderboardMetric.AVERAGE_CO2E_PER_KILOMETER);
+        assertEquals("bob", average.get(1).username());
+        assertEquals(0.1, average.get(0).value(), 1e-9);
+    }
+
+    @Test
+    void appliesUpdatesAndRemovals() {
+        TripFigures first = trip(1, 1, 10, 2.0);
+        engine.onTripChanged(new TripChangedEvent(null, first));
+        engine.onTripChanged(new TripChangedEvent(first, trip(1, 1, 10, 5.0)));
+
+        assertEquals(5.0, lifetime(LeaderboardMetric.TOTAL_EMISSIONS).get(0).value(), 1e-9);
+
+        engine.onTripChanged(new TripChangedEvent(trip(1, 1, 10, 5.0), null));
+
+        assertTrue(lifetime(LeaderboardMetric.TOTAL_EMISSIONS).isEmpty());
+    }
+
+    @Test
+    void removesAllTripsOfAUserAtOnce() {
+        engine.onTripChanged(new TripChangedEvent(null, tripOn(TODAY, 1, 1, 10, 1.0)));
+        engine.onTripChanged(new TripChangedEvent(null, tripOn(TODAY.minusDays(10), 2, 1, 30, 3.0)));
+        engine.onTripChanged(new TripChangedEvent(null, trip(3, 2, 20, 2.0)));
+
+        engine.onUserTripsRemoved(new UserTripsRemovedEvent(
+                1,
+                new TripSums(2, 40, 1200, 4.0, 0, 0.2, 2),
+                Map.of(
+                        TODAY, new TripSums(1, 10, 600, 1.0, 0, 0.1, 1),
+                        TODAY.minusDays(10), new TripSums(1, 30, 600, 3.0, 0, 0.1, 1))));
+
+        for (LeaderboardPeriod period : LeaderboardPeriod.values()) {
+            List<UserRepository.LeaderboardRow> rows = engine.getLeaderboard(
+                    LeaderboardMetric.TOTAL_DISTANCE_KILOMETERS, period, 10, null).rows();
+            assertEquals(List.of("bob"), rows.stream().map(UserRepository.LeaderboardRow::username).toList());
+        }
+        assertTrue(engine.getRank(LeaderboardMetric.AVERAGE_CO2E_PER_KILOMETER, LeaderboardPeriod.PAST_MONTH, 1, 1).isEmpty());
+    }
+
+    @Test
+    void reconcileReplacesTotals() {
+        engine.onTripChanged(new TripChangedEvent(null, trip(1, 1, 10, 2.0)));
+        when(userRepository.getUserTotals()).thenReturn(List.of(
+                new UserRepository.UserTotalsRow(2, "bob", "Bob", "B", 1, 3.0, 0, 600, 10, 0.3, 1)));
+
+        engine.reconcile();
+
+        List<UserRepository.LeaderboardRow> emissions = lifetime(LeaderboardMetric.TOTAL_EMISSIONS);
+        assertEquals(1, emissions.size());
+        assertEquals("bob", emissions.get(0).username());
+        assertEquals(3.0, emissions.get(0).value(), 1e-9);
+    }
+
+    @Test
+    void pagesThroughTheLeaderboardWithACursor() {
+        for (long id = 1; id <= 5; id++) {
+            String name = "user" + id;
+            when(userRepository.findById(id + 10)).thenReturn(Optional.of(new User(name, name, name, name, "pw", 0)));
+            engine.onTripChanged(new TripChangedEvent(null, trip(id, id + 10, 10, id)));
+        }
+
+        LeaderboardEngine.Page first = engine.getLeaderboard(LeaderboardMetric.TOTAL_EMISSIONS, LeaderboardPeriod.LIFETIME, 2, null);
+        assertEquals(List.of("user1", "user2"), first.rows().stream().map(UserRepository.LeaderboardRow::username).toList());
+
+        // A user passing the cursor row does not shift the next page
+        engine.onTripChanged(new TripChangedEvent(trip(5, 15, 10, 5), trip(5, 15, 10, 0.5)));
+
+        LeaderboardEngine.Page second = engine.getLeaderboard(LeaderboardMetric.TOTAL_EMISSIONS, LeaderboardPeriod.LIFETIME, 2, first.nextCursor());
+        assertEquals(List.of("user3", "user4"), second.rows().stream().map(UserRepository.LeaderboardRow::username).toList());
+        assertNull(second.nextCursor());
+    }
+
+    @Test
+    void pagesJoinUpToTheWholeLeaderboard() {
+        Random random = new Random(7);
+        for (long id = 1; id <= 40; id++) {
+            String name = "user" + id;
+            when(userRepository.findById(id + 10)).thenReturn(Optional.of(new User(name, name, name, name, "pw", 0)));
+            // Few distinct values, so most pages end inside a tie
+            engine.onTripChanged(new TripChangedEvent(null, tripOn(
+                    TODAY.minusDays(random.nextInt(10)), id, id + 10, 1 + random.nextInt(3), random.nextInt(4))));
+        }
+
+        for (LeaderboardPeriod period : LeaderboardPeriod.values()) {
+            for (LeaderboardMetric metric : LeaderboardMetric.values()) {
+                List<UserRepository.LeaderboardRow> all = engine.getLeaderboard(metric, period, 100, null).rows();
+                List<UserRepository.LeaderboardRow> paged = new ArrayList<>();
+                String cursor = null;
+                do {
+                    LeaderboardEngine.Page page = engine.getLeaderboard(metric, period, 7, cursor);
+                    paged.addAll(page.rows());
+                    cursor = page.nextCursor();
+                } while (cursor != null);
+                assertEquals(all, paged);
+            }
+        }
+    }
+
+    @Test
+    void dropsDaysThatLeaveAPeriodWindow() {
+        engine.onTripChanged(new TripChangedEvent(null, tripOn(TODAY, 1, 1, 10, 1.0)));
+        engine.onTripChanged(new TripChangedEvent(null, tripOn(TODAY.minusDays(10), 2, 2, 30, 3.0)));
+
+        LeaderboardEngine.Page week = engine.getLeaderboard(LeaderboardMetric.TOTAL_DISTANCE_KILOMETERS, LeaderboardPeriod.PAST_WEEK, 10, null);
+        assertEquals(List.of("ada"), week.rows().stream().map(UserRepository.LeaderboardRow::username).toList());
+        LeaderboardEngine.Page month = engine.getLeaderboard(LeaderboardMetric.TOTAL_DISTANCE_KILOMETERS, LeaderboardPeriod.PAST_MONTH, 10, null);
+        assertEquals(List.of("bob", "ada"), month.rows().stream().map(UserRepository.LeaderboardRow::username).toList());
+
+        when(rollup.today()).thenReturn(TODAY.plusDays(7));
+        engine.rollOver();
+
+        assertTrue(engine.getLeaderboard(LeaderboardMetric.TOTAL_DISTANCE_KILOMETERS, LeaderboardPeriod.PAST_WEEK, 10, null).rows().isEmpty());
+        month = engine.getLeaderboard(LeaderboardMetric.TOTAL_DISTANCE_KILOMETERS, LeaderboardPeriod.PAST_MONTH, 10, null);
+        assertEquals(List.of("bob", "ada"), month.rows().stream().map(UserRepository.LeaderboardRow::username).toList());
+        assertEquals(2, engine.getLeaderboard(LeaderboardMetric.TOTAL_DISTANCE_KILOMETERS, LeaderboardPeriod.LIFETIME, 10, null).rows().size());
+    }
+
+    @Test
+    void findsAUsersRankAndNeighbours() {
+        for (long id = 1; id <= 5; id++) {
+            String name = "user" + id;
+            when(userRepository.findById(id + 10)).thenReturn(Optional.of(new User(name, name, name, name, "pw", 0)));
+            engine.onTripChanged(new TripChangedEvent(null, trip(id, id + 10, 10, id)));
+        }
+
+        LeaderboardEngine.Rank rank = engine.getRank(LeaderboardMetric.TOTAL_EMISSIONS, LeaderboardPeriod.LIFETIME, 14, 1).orElseThrow();
+
+        assertEquals(4, rank.rank());
+        assertEquals(5, rank.total());
+        assertEquals("user4", rank.row().username());
+        assertEquals(3, rank.neighboursFrom());
+        assertEquals(List.of("user3", "user4", "user5"), rank.neighbours().stream().map(UserRepository.LeaderboardRow::username).toList());
+        assertTrue(engine.getRank(LeaderboardMetric.TOTAL_EMISSIONS, LeaderboardPeriod.LIFETIME, 99, 1).isEmpty());
+    }
+
+    @Test
+    void ranksMatchTheLeaderboardAfterEveryWrite() {
+        Random random = new Random(42);
+        for (long id = 1; id <= 60; id++) {
+            String name = "user" + id;
+            when(userRepository.findById(id + 10)).thenReturn(Optional.of(new User(name, name, name, name, "pw", 0)));
+        }
+        TripFigures[] trips = new TripFigures[60];
+        for (int write = 0; write < 400; write++) {
+            int slot = random.nextInt(trips.length);
+            TripFigures after = random.nextInt(5) == 0
+                    ? null
+                    : tripOn(TODAY.minusDays(random.nextInt(20)), slot, slot + 11, 10, random.nextInt(8));
+            engine.onTripChanged(new TripChangedEvent(trips[slot], after));
+            trips[slot] = after;
+
+            LeaderboardPeriod period = write % 2 == 0 ? LeaderboardPeriod.LIFETIME : LeaderboardPeriod.PAST_WEEK;
+            List<UserRepository.LeaderboardRow> rows = engine.getLeaderboard(
+                    LeaderboardMetric.TOTAL_EMISSIONS, period, 100, null).rows();
+            long userId = slot + 11;
+            Optional<LeaderboardEngine.Rank> rank = engine.getRank(LeaderboardMetric.TOTAL_EMISSIONS, period, userId, 2);
+            int index = rows.stream().map(UserRepository.LeaderboardRow::username).toList().indexOf("user" + (slot + 1));
+            assertEquals(index < 0, rank.isEmpty());
+            if (index >= 0) {
+                assertEquals(index + 1, rank.get().rank());
+                assertEquals(rows.size(), rank.get().total());
+                int from = Math.max(0, index - 2);
+                assertEquals(rows.subList(from, Math.min(rows.size(), index + 3)), rank.get().neighbours());
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.demo;
+
+import com.example.demo.controller.AdminController;
+import com.example.demo.service.DailyTripRollup;
+import com.example.demo.service.DataVersions;
+import com.example.demo.service.DirectionsCache;
+import com.example.demo.service.EmissionFactorEngine;
+import com.example.demo.service.GlobalStatisticsCounters;
+import com.example.demo.service.MapsApiClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+class MapsApiClientTests {
+
+    private final MapsApiClient client = new MapsApiClient("", 4, 30, 10, 5, 1500, 2500, 3000);
+
+    @AfterEach
+    void tearDown() {
+        client.context().shutdown();
+    }
+
+    @Test
+    void appliesPoolSettingsToTheHttpClient() {
+        MapsApiClient.PoolStats stats = client.poolStats();
+
+        assertEquals(4, stats.maxIdleConnections());
+        assertEquals(30, stats.keepAliveSeconds());
+        assertEquals(10, stats.maxRequests());
+        assertEquals(5, stats.maxRequestsPerHost());
+        assertEquals(1500, stats.connectTimeoutMs());
+        assertEquals(2500, stats.readTimeoutMs());
+        assertEquals(0, stats.connectionCount());
+        assertEquals(0, stats.runningCalls());
+    }
+
+    @Test
+    void adminEndpointReportsPoolStats() {
+        AdminController controller = new AdminController(
+                client,
+                mock(DirectionsCache.class),
+                mock(EmissionFactorEngine.class),
+                mock(DailyTripRollup.class),
+                mock(DataVersions.class),
+                mock(GlobalStatisticsCounters.class));
+
+        assertEquals(client.poolStats(), controller.getMapsPoolStats().getBody());
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.demo;
+
+import com.example.demo.service.DirectionsFixtures;
+import com.example.demo.service.ReplayDirectionsProvider;
+import com.google.maps.model.DirectionsLeg;
+import com.google.maps.model.DirectionsResult;
+import com.google.maps.model.DirectionsRoute;
+import com.google.maps.model.TravelMode;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ReplayDirectionsProviderTests {
+
+    @TempDir
+    Path fixturesDirectory;
+
+    private static DirectionsResult route(String summary) {
+        DirectionsLeg leg = new DirectionsLeg();
+        leg.arrivalTime = ZonedDateTime.parse("2025-03-01T08:30:00+01:00[Europe/Oslo]");
+        DirectionsRoute route = new DirectionsRoute();
+        route.summary = summary;
+        route.legs = new DirectionsLeg[] { leg };
+        DirectionsResult result = new DirectionsResult();
+        result.routes = new DirectionsRoute[] { route };
+        return result;
+    }
+
+    @Test
+    void replaysRecordedDirections() throws Exception {
+        DirectionsFixtures.write(fixturesDirectory, new DirectionsFixtures.Fixture(
+                "Bergen Sentrum", "Fana", TravelMode.TRANSIT, route("Bybanen")));
+
+        var provider = new ReplayDirectionsProvider(fixturesDirectory.toString(), 0, 0, false);
+
+        DirectionsResult result = provider.getDirections("bergen sentrum", "FANA", TravelMode.TRANSIT);
+        assertNotNull(result);
+        assertEquals("Bybanen", result.routes[0].summary);
+        assertEquals(
+                ZonedDateTime.parse("2025-03-01T08:30:00+01:00[Europe/Oslo]"),
+                result.routes[0].legs[0].arrivalTime);
+        assertNull(provider.getDirections("Bergen Sentrum", "Fana", TravelMode.DRIVING));
+    }
+
+    @Test
+    void fallsBackToRouteOfSameMode() throws Exception {
+        DirectionsFixtures.write(fixturesDirectory, new DirectionsFixtures.Fixture(
+                "Bergen Sentrum", "Fana", TravelMode.DRIVING, route("E39")));
+
+        var provider = new ReplayDirectionsProvider(fixturesDirectory.toString(), 0, 0, true);
+
+        DirectionsResult result = provider.getDirections("Åsane", "Laksevåg", TravelMode.DRIVING);
+        assertNotNull(result);
+        assertEquals("E39", result.routes[0].summary);
+        assertEquals(
+                List.of("Bergen Sentrum"),
+                provider.getAddressAutocomplete("bergen", UUID.randomUUID()));
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.demo;
+
+import com.example.demo.model.RouteEstimate;
+import com.example.demo.repository.RouteEstimateRepository;
+import com.example.demo.service.DirectionsCache;
+import com.example.demo.service.DirectionsKey;
+import com.example.demo.service.RouteEstimateStore;
+import com.google.maps.model.TravelMode;
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:testdb-route-store",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=password",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+})
+class RouteEstimateStoreTests {
+
+    @Autowired
+    private RouteEstimateRepository repository;
+
+    // Walking, bicycling and driving for an hour, transit for ten minutes
+    private final DirectionsCache cache = new DirectionsCache(100, 60, 60, 60, 10);
+
+    private final DirectionsKey walking = DirectionsKey.of("Bergen", "Voss", TravelMode.WALKING);
+    private final DirectionsKey transit = DirectionsKey.of("Bergen", "Voss", TravelMode.TRANSIT);
+
+    @BeforeEach
+    void setUp() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void findsStoredEstimatesAfterARestart() {
+        new RouteEstimateStore(repository, cache).save(walking, 100, 80000, 0.0, 7);
+
+        // A new store, as after a deploy, reads the row on first use
+        RouteEstimateStore restarted = new RouteEstimateStore(repository, cache);
+        RouteEstimate found = restarted.find(
+                DirectionsKey.of(" bergen", "VOSS ", TravelMode.WALKING), 7).orElseThrow();
+
+        assertEquals(100, found.getDistanceKm(), 1e-9);
+        assertEquals(80000, found.getDurationSeconds());
+        assertFalse(restarted.find(transit, 7).isPresent());
+    }
+
+    @Test
+    void expiresWithTheDirectionsCache() {
+        RouteEstimateStore store = new RouteEstimateStore(repository, cache);
+        LocalDateTime before = LocalDateTime.now().minusSeconds(1);
+
+        store.save(transit, 105, 6000, 2.1, 7);
+
+        LocalDateTime expiresAt = repository.findAll().get(0).getExpiresAt();
+        assertFalse(expiresAt.isBefore(before.plusMinutes(10)));
+        assertTrue(expiresAt.isBefore(LocalDateTime.now().plusMinutes(11)));
+
+        // Modes the cache does not keep are not stored either
+        new RouteEstimateStore(repository, new DirectionsCache(100, 60, 60, 60, 0))
+                .save(DirectionsKey.of("Voss", "Bergen", TravelMode.TRANSIT), 105, 6000, 2.1, 7);
+        assertEquals(1, repository.count());
+    }
+
+    @Test
+    void ignoresAndPurgesExpiredEstimates() {
+        RouteEstimateStore store = new RouteEstimateStore(repository, cache);
+        store.save(walking, 100, 80000, 0.0, 7);
+        repository.save(new RouteEstimate(
+                transit.origin(), transit.destination(), "transit",
+                105, 6000, 2.1, 7, LocalDateTime.now().minusMinutes(1)));
+
+        assertFalse(store.find(transit, 7).isPresent());
+
+        store.purgeExpired();
+
+        assertEquals(1, repository.count());
+        assertTrue(store.find(walking, 7).isPresent());
+    }
+
+    @Test
+    void missesEstimatesFromOtherEmissionFactors() {
+        RouteEstimateStore store = new RouteEstimateStore(repository, cache);
+        store.save(walking, 100, 80000, 0.0, 7);
+
+        assertFalse(store.find(walking, 8).isPresent());
+
+        // Saving with the new factors replaces the row
+        store.save(walking, 100, 80000, 0.5, 8);
+        assertEquals(1, repository.count());
+        assertEquals(0.5, store.find(walking, 8).orElseThrow().getEmissionsCO2eKg(), 1e-9);
+        assertFalse(store.find(walking, 7).isPresent());
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.demo;
+
+import com.example.demo.service.SingleFlight;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTests {
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        SingleFlight<String, String> flight = new SingleFlight<>(executor);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> callers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            callers.add(executor.submit(() -> flight.execute("bergen-fana", () -> {
+                loads.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "route";
+            }, 5000)));
+        }
+        // Give every caller time to join the flight before it completes
+        Thread.sleep(200);
+        release.countDown();
+
+        for (Future<String> caller : callers) {
+            assertEquals("route", caller.get());
+        }
+        assertEquals(1, loads.get());
+        executor.shutdownNow();
+    }
+
+    @Test
+    void failuresPropagateToWaiters() {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        SingleFlight<String, String> flight = new SingleFlight<>(executor);
+
+        assertThrows(IllegalArgumentException.class, () -> flight.execute("bergen-fana", () -> {
+            throw new IllegalArgumentException("No route");
+        }, 5000));
+        assertEquals(0, flight.inFlightCount());
+        executor.shutdownNow();
+    }
+
+    @Test
+    void waitersGiveUpAfterTimeout() {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        SingleFlight<String, String> flight = new SingleFlight<>(executor);
+
+        assertThrows(IllegalStateException.class, () -> flight.execute("bergen-fana", () -> {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "route";
+        }, 50));
+        executor.shutdownNow();
+    }
+}
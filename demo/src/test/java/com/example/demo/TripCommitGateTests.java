@@ -0,0 +1,39 @@
+package com.example.demo;
+
+import com.example.demo.service.TripChangedEvent;
+import com.example.demo.service.TripCommitGate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class TripCommitGateTests {
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void reloadWaitsForCommittingTransactions() throws Exception {
+        TripCommitGate gate = new TripCommitGate();
+        TransactionSynchronizationManager.initSynchronization();
+        gate.onTripChanged(new TripChangedEvent(null, null));
+
+        CompletableFuture<String> reload = CompletableFuture.supplyAsync(() -> gate.reload(() -> "loaded"));
+        Thread.sleep(200);
+        assertFalse(reload.isDone());
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+        assertEquals("loaded", reload.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,332 @@
+package com.example.demo;
+
+import com.example.demo.controller.TransportController;
+import com.example.demo.repository.TransportationModeRepository;
+import com.example.demo.repository.TripRepository;
+import com.example.demo.repository.UserRepository;
+import com.example.demo.repository.VehicleRepository;
+import com.example.demo.service.AddressIndex;
+import com.example.demo.service.DailyTripRollup;
+import com.example.demo.service.DataVersions;
+import com.example.demo.service.DirectionsCache;
+import com.example.demo.service.DirectionsFixtures;
+import com.example.demo.service.DirectionsProvider;
+import com.example.demo.service.EmissionFactorEngine;
+import com.example.demo.service.LeaderboardEngine;
+import com.example.demo.service.ReplayDirectionsProvider;
+import com.example.demo.service.RouteEstimateStore;
+import com.example.demo.service.TransportService;
+import com.example.demo.service.TripService;
+import com.example.demo.service.UserService;
+import com.example.demo.service.UserStatisticsService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.maps.model.DirectionsLeg;
+import com.google.maps.model.DirectionsResult;
+import com.google.maps.model.DirectionsRoute;
+import com.google.maps.model.DirectionsStep;
+import com.google.maps.model.Distance;
+import com.google.maps.model.TravelMode;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Trip estimates against recorded directions, with a synthetic delay or
+ * failure for some travel modes.
+ */
+class TripEstimateTests {
+
+    @TempDir
+    Path fixturesDirectory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private ReplayDirectionsProvider replay;
+
+    static DirectionsResult route(TravelMode mode, long meters, long seconds) {
+        DirectionsStep step = new DirectionsStep();
+        step.travelMode = mode;
+        step.distance = new Distance();
+        step.distance.inMeters = meters;
+        step.duration = new com.google.maps.model.Duration();
+        step.duration.inSeconds = seconds;
+        DirectionsLeg leg = new DirectionsLeg();
+        leg.steps = new DirectionsStep[] { step };
+        DirectionsRoute route = new DirectionsRoute();
+        route.legs = new DirectionsLeg[] { leg };
+        DirectionsResult result = new DirectionsResult();
+        result.routes = new DirectionsRoute[] { route };
+        return result;
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DirectionsFixtures.write(fixturesDirectory, new DirectionsFixtures.Fixture(
+                "Bergen", "Voss", TravelMode.WALKING, route(TravelMode.WALKING, 100000, 80000)));
+        DirectionsFixtures.write(fixturesDirectory, new DirectionsFixtures.Fixture(
+                "Bergen", "Voss", TravelMode.BICYCLING, route(TravelMode.BICYCLING, 100000, 20000)));
+        DirectionsFixtures.write(fixturesDirectory, new DirectionsFixtures.Fixture(
+                "Bergen", "Voss", TravelMode.TRANSIT, route(TravelMode.TRANSIT, 105000, 6000)));
+        DirectionsFixtures.write(fixturesDirectory, new DirectionsFixtures.Fixture(
+                "Bergen", "Voss", TravelMode.DRIVING, route(TravelMode.DRIVING, 100000, 5400)));
+        replay = new ReplayDirectionsProvider(fixturesDirectory.toString(), 0, 0, true);
+    }
+
+    private TransportService service(DirectionsProvider directions, long timeoutMs) {
+        return service(directions, timeoutMs, 8);
+    }
+
+    private TransportService service(DirectionsProvider directions, long timeoutMs, int batchConcurrency) {
+        return new TransportService(
+                mock(UserRepository.class),
+                mock(TripRepository.class),
+                mock(VehicleRepository.class),
+                directions,
+                replay,
+                mock(AddressIndex.class),
+                new DirectionsCache(100, 60, 60, 60, 10),
+                mock(RouteEstimateStore.class),
+                new EmissionFactorEngine(mock(TransportationModeRepository.class)),
+                mock(LeaderboardEngine.class),
+                mock(DailyTripRollup.class),
+                mock(DataVersions.class),
+                mock(TripService.class),
+                mock(UserStatisticsService.class),
+                true,
+                timeoutMs,
+                5,
+                3,
+                1000,
+                batchConcurrency);
+    }
+
+    // Replays directions, after a delay for one travel mode
+    private DirectionsProvider slow(TravelMode slowMode, long delayMs) {
+        return (origin, destination, mode) -> {
+            if (mode == slowMode) {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return replay.getDirections(origin, destination, mode);
+        };
+    }
+
+    @Test
+    void requestsAllModesAtOnce() throws Exception {
+        replay = new ReplayDirectionsProvider(fixturesDirectory.toString(), 300, 0, true);
+        TransportService service = service(replay, 5000);
+
+        long start = System.nanoTime();
+        var results = service.getTripEstimate("Bergen", "Voss", null);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(
+                Set.of("walking", "bicycling", "transit", "driving"),
+                results.getAlternatives().keySet());
+        // Four calls one after the other would take at least 1200 ms
+        assertTrue(elapsedMs < 1000, "took " + elapsedMs + " ms");
+        assertEquals(11.8, results.getAlternatives().get("driving").getEmissionsCO2eKg(), 1e-9);
+    }
+
+    @Test
+    void mergesTheModesThatFinishBeforeTheDeadline() {
+        TransportService service = service(slow(TravelMode.TRANSIT, 2000), 200);
+
+        long start = System.nanoTime();
+        var results = service.getTripEstimate("Bergen", "Voss", null);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(Set.of("walking", "bicycling", "driving"), results.getAlternatives().keySet());
+        assertTrue(elapsedMs < 1500, "took " + elapsedMs + " ms");
+    }
+
+    @Test
+    void failsOnlyIfNoModeSucceeds() {
+        TransportService partly = service((origin, destination, mode) -> {
+            if (mode == TravelMode.BICYCLING) {
+                throw new IllegalStateException("Directions unavailable");
+            }
+            return replay.getDirections(origin, destination, mode);
+        }, 5000);
+        TransportService failing = service((origin, destination, mode) -> {
+            throw new IllegalStateException("Directions unavailable");
+        }, 5000);
+
+        assertEquals(
+                Set.of("walking", "transit", "driving"),
+                partly.getTripEstimate("Bergen", "Voss", null).getAlternatives().keySet());
+        assertThrows(IllegalStateException.class, () -> failing.getTripEstimate("Bergen", "Voss", null));
+    }
+
+    private record Event(String name, JsonNode data) {
+    }
+
+    private MockMvc mvc(TransportService service) {
+        return MockMvcBuilders
+                .standaloneSetup(new TransportController(mock(UserService.class), service, objectMapper))
+                .build();
+    }
+
+    private List<Event> streamEstimates(TransportService service) throws Exception {
+        MvcResult result = mvc(service)
+                .perform(get("/transport/tripestimate/stream")
+                        .param("origin", "Bergen")
+                        .param("destination", "Voss"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        // Waits for the emitter to complete
+        result.getAsyncResult(5000);
+
+        List<Event> events = new ArrayList<>();
+        String name = null;
+        for (String line : result.getResponse().getContentAsString().split("\n")) {
+            if (line.startsWith("event:")) {
+                name = line.substring("event:".length());
+            } else if (line.startsWith("data:")) {
+                events.add(new Event(name, objectMapper.readTree(line.substring("data:".length()))));
+            }
+        }
+        return events;
+    }
+
+    private static Set<String> modes(List<Event> events) {
+        Set<String> modes = new HashSet<>();
+        events.forEach(event -> modes.add(event.data().get("mode").asText()));
+        return modes;
+    }
+
+    @Test
+    void streamsEachModeAsItResolvesThenASummary() throws Exception {
+        List<Event> events = streamEstimates(service(slow(TravelMode.TRANSIT, 300), 5000));
+
+        assertEquals(
+                List.of("estimate", "estimate", "estimate", "estimate", "summary"),
+                events.stream().map(Event::name).toList());
+        assertEquals(Set.of("walking", "bicycling", "driving"), modes(events.subList(0, 3)));
+        // The slow mode arrives last, but before the summary
+        assertEquals("transit", events.get(3).data().get("mode").asText());
+        assertEquals(4, events.get(4).data().get("alternatives").size());
+    }
+
+    @Test
+    void streamsAnErrorForModesThatMissTheDeadline() throws Exception {
+        List<Event> events = streamEstimates(service(slow(TravelMode.TRANSIT, 2000), 200));
+
+        assertEquals(
+                List.of("estimate", "estimate", "estimate", "error", "summary"),
+                events.stream().map(Event::name).toList());
+        assertEquals("transit", events.get(3).data().get("mode").asText());
+        JsonNode summary = events.get(4).data().get("alternatives");
+        assertEquals(3, summary.size());
+        assertTrue(summary.has("driving"));
+    }
+
+    @Test
+    void batchEstimatesDuplicatePairsOnce() {
+        TransportService service = service(replay, 5000);
+        List<TransportService.BatchEstimate> results = Collections.synchronizedList(new ArrayList<>());
+
+        service.batchTripEstimate(
+                List.of(
+                        new TransportService.TripPair("Bergen", "Voss"),
+                        new TransportService.TripPair(" bergen", "VOSS"),
+                        new TransportService.TripPair("Voss", "Bergen")),
+                null,
+                results::add);
+
+        assertEquals(2, results.size());
+        assertTrue(results.stream().allMatch(result -> result.error() == null));
+        assertTrue(results.stream().allMatch(result -> result.alternatives().size() == 4));
+    }
+
+    @Test
+    void batchEstimatesAtMostMaxConcurrencyPairsAtOnce() {
+        Map<String, Integer> inFlight = new HashMap<>();
+        AtomicInteger mostPairs = new AtomicInteger();
+        TransportService service = service((origin, destination, mode) -> {
+            synchronized (inFlight) {
+                inFlight.merge(origin, 1, Integer::sum);
+                mostPairs.accumulateAndGet(inFlight.size(), Math::max);
+            }
+            try {
+                Thread.sleep(50);
+                return replay.getDirections(origin, destination, mode);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } finally {
+                synchronized (inFlight) {
+                    inFlight.computeIfPresent(origin, (key, calls) -> calls == 1 ? null : calls - 1);
+                }
+            }
+        }, 5000, 2);
+        List<TransportService.TripPair> pairs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            pairs.add(new TransportService.TripPair("Origin " + i, "Voss"));
+        }
+        AtomicInteger results = new AtomicInteger();
+
+        service.batchTripEstimate(pairs, null, result -> results.incrementAndGet());
+
+        assertEquals(10, results.get());
+        assertEquals(2, mostPairs.get());
+    }
+
+    @Test
+    void batchEndpointStreamsOneLinePerUniquePair() throws Exception {
+        MockMvc mvc = mvc(service(replay, 5000));
+        String body = """
+                {"pairs": [
+                    {"origin": "Bergen", "destination": "Voss"},
+                    {"origin": "bergen", "destination": "voss"},
+                    {"origin": "Voss", "destination": "Bergen"}
+                ]}
+                """;
+
+        MvcResult result = mvc
+                .perform(post("/transport/tripestimate/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result.getAsyncResult(5000);
+
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+        assertEquals(2, lines.length);
+        for (String line : lines) {
+            assertEquals(4, objectMapper.readTree(line).get("alternatives").size());
+        }
+
+        // Checked before anything is streamed
+        mvc.perform(post("/transport/tripestimate/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"pairs\": [{\"origin\": \"Bergen\", \"destination\": \"Voss\"}], \"vehicleId\": \"42\"}"))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.demo;
+
+import com.example.demo.model.Trip;
+import com.example.demo.model.User;
+import com.example.demo.repository.TripRepository;
+import com.example.demo.repository.UserRepository;
+import com.example.demo.service.TripExporter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:testdb-export",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=password",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+})
+class TripExporterTests {
+
+    @Autowired
+    private TripExporter exporter;
+
+    @Autowired
+    private TripRepository tripRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() {
+        tripRepository.deleteAll();
+        userRepository.deleteAll();
+        User ada = userRepository.save(new User("Ada", "A", "ada", "ada@example.com", "pw", 0));
+        tripRepository.save(new Trip(ada, "Bergen, Norway", "Voss", "driving", null, 100, 5400, 12.0, 0.0));
+        tripRepository.save(new Trip(ada, "Voss", "Bergen", "transit", null, 100, 6000, 3.0, 9.0));
+    }
+
+    private String export(TripExporter.Format format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.export(format, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void exportsAJsonArray() throws IOException {
+        JsonNode trips = objectMapper.readTree(export(TripExporter.Format.JSON));
+
+        assertTrue(trips.isArray());
+        assertEquals(2, trips.size());
+        assertEquals("Bergen, Norway", trips.get(0).get("origin").asText());
+        assertEquals(12.0, trips.get(0).get("totalEmissionsCO2eKg").asDouble());
+        assertTrue(trips.get(0).get("vehicle").isNull());
+        assertTrue(trips.get(0).get("createdAt").isTextual());
+    }
+
+    @Test
+    void exportsOneLinePerTrip() throws IOException {
+        String[] ndjson = export(TripExporter.Format.NDJSON).split("\n");
+        String[] csv = export(TripExporter.Format.CSV).split("\n");
+
+        assertEquals(2, ndjson.length);
+        assertEquals("transit", objectMapper.readTree(ndjson[1]).get("travelMode").asText());
+        assertEquals(3, csv.length);
+        assertTrue(csv[1].contains(",\"Bergen, Norway\",\"Voss\",\"driving\","));
+    }
+}
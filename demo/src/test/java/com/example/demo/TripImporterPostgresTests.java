@@ -0,0 +1,142 @@
+package com.example.demo;
+
+import com.example.demo.model.Trip;
+import com.example.demo.model.TripImport;
+import com.example.demo.model.User;
+import com.example.demo.repository.TripRepository;
+import com.example.demo.repository.UserDailyTripStatsRepository;
+import com.example.demo.repository.UserRepository;
+import com.example.demo.service.DailyTripRollup;
+import com.example.demo.service.TripImporter;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The COPY path of the bulk import, which only runs on Postgres. Run with
+ * ./gradlew test -Dpostgres.url=jdbc:postgresql://localhost:5432/test
+ * (and -Dpostgres.username, -Dpostgres.password) against a throwaway
+ * database, since the schema is dropped afterwards.
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "postgres.url", matches = ".+")
+@TestPropertySource(properties = {
+        "spring.datasource.driver-class-name=org.postgresql.Driver",
+        "spring.jpa.database-platform=org.hibernate.dialect.PostgreSQLDialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "transport.import.chunk-size=120",
+})
+// The first test runs while trips_seq is still at its start
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class TripImporterPostgresTests {
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> System.getProperty("postgres.url"));
+        registry.add("spring.datasource.username", () -> System.getProperty("postgres.username", "postgres"));
+        registry.add("spring.datasource.password", () -> System.getProperty("postgres.password", ""));
+    }
+
+    @Autowired
+    private TripImporter importer;
+
+    @Autowired
+    private TripRepository tripRepository;
+
+    @Autowired
+    private UserDailyTripStatsRepository statsRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DailyTripRollup rollup;
+
+    private User ada;
+
+    @BeforeEach
+    void setUp() {
+        tripRepository.deleteAll();
+        statsRepository.deleteAll();
+        userRepository.deleteAll();
+        ada = userRepository.save(new User("Ada", "A", "ada", "ada@example.com", "pw", 0));
+    }
+
+    private String csv(int rows) {
+        StringBuilder csv = new StringBuilder(
+                "userId,origin,destination,travelMode,createdAt,distanceKm,durationSeconds,emissionsCO2eKg,savedEmissionsCO2eKg\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append(ada.getId()).append(",\"Bergen, Norway\",Voss,driving,2024-05-0")
+                    .append(1 + i % 3).append("T08:00:00,10,600,1.5,0\n");
+        }
+        return csv.toString();
+    }
+
+    private Trip trip() {
+        return new Trip(ada, "A", "B", "walking", null, 1, 900, 0.0, 0.2);
+    }
+
+    @Test
+    @Order(2)
+    void copiesChunksWithIdsThatDoNotCollideWithHibernate() throws IOException {
+        // Hibernate takes the first block of the sequence before the import
+        tripRepository.save(trip());
+
+        // Three chunks of up to 120 rows, each spanning several id blocks
+        TripImport result = importer.importTrips(
+                new BufferedReader(new StringReader(csv(250))), TripImporter.Format.CSV, null);
+
+        assertEquals(TripImport.Status.COMPLETED, result.getStatus());
+        assertEquals(250, result.getRowsImported());
+
+        // Enough to need new blocks from the sequence after the import
+        for (int i = 0; i < 120; i++) {
+            tripRepository.save(trip());
+        }
+
+        List<Trip> trips = tripRepository.findAll();
+        Set<Long> ids = new HashSet<>();
+        trips.forEach(trip -> ids.add(trip.getId()));
+        assertEquals(371, trips.size());
+        assertEquals(371, ids.size());
+        assertEquals(250, trips.stream().filter(trip -> trip.getOrigin().equals("Bergen, Norway")).count());
+
+        LocalDate first = rollup.dayOf(LocalDate.of(2024, 5, 1).atTime(8, 0));
+        var stats = statsRepository.findByUserIdAndDay(ada.getId(), first).orElseThrow();
+        assertEquals(84, stats.getTrips());
+        assertEquals(84 * 1.5, stats.getEmissionsCO2eKg(), 1e-9);
+    }
+
+    @Test
+    @Order(1)
+    void reservesIdsOnAFreshSequence() throws IOException {
+        // The first sequence values have no full block of ids below them
+        TripImport result = importer.importTrips(
+                new BufferedReader(new StringReader(csv(3))), TripImporter.Format.CSV, null);
+        tripRepository.save(trip());
+
+        assertEquals(3, result.getRowsImported());
+        List<Trip> trips = tripRepository.findAll();
+        assertEquals(4, trips.stream().map(Trip::getId).distinct().count());
+        assertTrue(trips.stream().allMatch(trip -> trip.getId() > 0));
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.demo;
+
+import com.example.demo.model.TripImport;
+import com.example.demo.model.User;
+import com.example.demo.repository.TripRepository;
+import com.example.demo.repository.UserDailyTripStatsRepository;
+import com.example.demo.repository.UserRepository;
+import com.example.demo.service.DailyTripRollup;
+import com.example.demo.service.TripImporter;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:testdb-import",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=password",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "transport.import.chunk-size=2",
+})
+class TripImporterTests {
+
+    @Autowired
+    private TripImporter importer;
+
+    @Autowired
+    private TripRepository tripRepository;
+
+    @Autowired
+    private UserDailyTripStatsRepository statsRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DailyTripRollup rollup;
+
+    private User ada;
+
+    @BeforeEach
+    void setUp() {
+        tripRepository.deleteAll();
+        statsRepository.deleteAll();
+        userRepository.deleteAll();
+        ada = userRepository.save(new User("Ada", "A", "ada", "ada@example.com", "pw", 0));
+    }
+
+    private String csv() {
+        long id = ada.getId();
+        return "userId,origin,destination,travelMode,createdAt,distanceKm,durationSeconds,emissionsCO2eKg,savedEmissionsCO2eKg\n"
+                + id + ",\"Bergen, Norway\",Voss,driving,2024-05-01T08:00:00,100,5400,12.0,0\n"
+                + id + ",Voss,Bergen,transit,2024-05-01T18:00:00,100,6000,3.0,9.0\n"
+                + id + ",Voss,Bergen,transit,not a time,100,6000,3.0,9.0\n"
+                + (id + 1000) + ",Voss,Bergen,transit,2024-05-02T08:00:00,100,6000,3.0,9.0\n"
+                + id + ",Bergen,Voss,bicycling,2024-05-02T08:00:00,100,18000,0.0,12.0\n";
+    }
+
+    @Test
+    void importsValidRowsAndRejectsTheRest() throws IOException {
+        TripImport result = importer.importTrips(
+                new BufferedReader(new StringReader(csv())), TripImporter.Format.CSV, null);
+
+        assertEquals(TripImport.Status.COMPLETED, result.getStatus());
+        assertEquals(5, result.getRowsRead());
+        assertEquals(3, result.getRowsImported());
+        assertEquals(2, result.getRowsRejected());
+        assertEquals(3, tripRepository.count());
+        assertTrue(tripRepository.findAll().stream()
+                .anyMatch(trip -> trip.getOrigin().equals("Bergen, Norway")));
+
+        LocalDate first = rollup.dayOf(LocalDate.of(2024, 5, 1).atTime(8, 0));
+        assertEquals(2, statsRepository.findByUserIdAndDay(ada.getId(), first).orElseThrow().getTrips());
+    }
+
+    @Test
+    void resumesAfterTheLastCommittedChunk() throws IOException {
+        String ndjson = "{\"userId\":" + ada.getId() + ",\"origin\":\"A\",\"destination\":\"B\",\"travelMode\":\"walking\","
+                + "\"createdAt\":\"2024-05-01T08:00:00\",\"distanceKm\":1,\"durationSeconds\":900,"
+                + "\"emissionsCO2eKg\":0,\"savedEmissionsCO2eKg\":0.2}\n";
+        String file = ndjson.repeat(5);
+        // Fails after the first chunk of two rows has been committed
+        BufferedReader failing = new BufferedReader(new StringReader(ndjson.repeat(3))) {
+            private int lines;
+
+            @Override
+            public String readLine() throws IOException {
+                if (++lines > 3) {
+                    throw new IOException("Connection reset");
+                }
+                return super.readLine();
+            }
+        };
+
+        TripImport failed = importer.importTrips(failing, TripImporter.Format.NDJSON, null);
+        assertEquals(TripImport.Status.FAILED, failed.getStatus());
+        assertEquals(2, failed.getRowsImported());
+
+        TripImport resumed = importer.importTrips(
+                new BufferedReader(new StringReader(file)), TripImporter.Format.NDJSON, failed.getId());
+        assertEquals(TripImport.Status.COMPLETED, resumed.getStatus());
+        assertEquals(5, resumed.getRowsRead());
+        assertEquals(5, tripRepository.count());
+    }
+}
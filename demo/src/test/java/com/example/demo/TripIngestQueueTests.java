@@ -0,0 +1,210 @@
+package com.example.demo;
+
+import com.example.demo.model.PendingTrip;
+import com.example.demo.model.Trip;
+import com.example.demo.model.User;
+import com.example.demo.repository.PendingTripRepository;
+import com.example.demo.repository.TransportationModeRepository;
+import com.example.demo.repository.TripRepository;
+import com.example.demo.repository.UserRepository;
+import com.example.demo.repository.VehicleRepository;
+import com.example.demo.service.AddressIndex;
+import com.example.demo.service.ChallengeStatusService;
+import com.example.demo.service.DailyTripRollup;
+import com.example.demo.service.DataVersions;
+import com.example.demo.service.DirectionsCache;
+import com.example.demo.service.DirectionsProvider;
+import com.example.demo.service.EmissionFactorEngine;
+import com.example.demo.service.LeaderboardEngine;
+import com.example.demo.service.PlacesProvider;
+import com.example.demo.service.RouteEstimateStore;
+import com.example.demo.service.TransportService;
+import com.example.demo.service.TripIngestQueue;
+import com.example.demo.service.TripService;
+import com.example.demo.service.UserStatisticsService;
+import com.google.maps.model.TravelMode;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TripIngestQueueTests {
+
+    private final PendingTripRepository pendingTripRepository = mock(PendingTripRepository.class);
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final TransportService transportService = mock(TransportService.class);
+    private final TripService tripService = mock(TripService.class);
+    private final ChallengeStatusService challengeStatusService = mock(ChallengeStatusService.class);
+
+    private final TripIngestQueue queue = new TripIngestQueue(
+            pendingTripRepository,
+            userRepository,
+            transportService,
+            tripService,
+            challengeStatusService,
+            mock(PlatformTransactionManager.class),
+            10,
+            4,
+            300000,
+            5,
+            1000);
+
+    private static PendingTrip claimed(long id, String origin, String destination, int attempts) {
+        PendingTrip pending = new PendingTrip(1, origin, destination, "walking", null);
+        ReflectionTestUtils.setField(pending, "id", id);
+        ReflectionTestUtils.setField(pending, "attempts", attempts);
+        return pending;
+    }
+
+    @Test
+    void savesEstimatedTripsAndSettlesFailures() {
+        User ada = new User("Ada", "A", "ada", "ada@example.com", "pw", 0);
+        PendingTrip good = claimed(1, "A", "B", 1);
+        PendingTrip invalid = claimed(2, "X", "Y", 1);
+        PendingTrip unavailable = claimed(4, "C", "D", 1);
+        Trip trip = new Trip(ada, "A", "B", "walking", null, 5, 3600, 0.0, 1.0);
+        when(pendingTripRepository.findReadyIds(any(), any())).thenReturn(List.of(1L, 2L, 3L, 4L));
+        when(pendingTripRepository.claim(eq(1L), anyString(), any())).thenReturn(1);
+        when(pendingTripRepository.claim(eq(2L), anyString(), any())).thenReturn(1);
+        // Trip 3 was claimed by another worker
+        when(pendingTripRepository.claim(eq(3L), anyString(), any())).thenReturn(0);
+        when(pendingTripRepository.claim(eq(4L), anyString(), any())).thenReturn(1);
+        when(pendingTripRepository.findAllById(List.of(1L, 2L, 4L))).thenReturn(List.of(good, invalid, unavailable));
+        when(pendingTripRepository.complete(eq(1L), anyString(), anyLong(), any())).thenReturn(1);
+        when(userRepository.findById(anyLong())).thenReturn(Optional.of(ada));
+        when(transportService.estimateTrip(ada, "A", "B", "walking", null)).thenReturn(trip);
+        when(transportService.estimateTrip(ada, "X", "Y", "walking", null))
+                .thenThrow(new IllegalArgumentException("No estimate for selected mode"));
+        when(transportService.estimateTrip(ada, "C", "D", "walking", null))
+                .thenThrow(new IllegalStateException("Directions unavailable"));
+        when(tripService.saveTrip(trip)).thenReturn(trip);
+
+        assertEquals(4, queue.processBatch());
+
+        verify(pendingTripRepository).complete(eq(1L), anyString(), eq(trip.getId()), any());
+        verify(challengeStatusService).recordTrip(ada, trip);
+        verify(transportService).recordAddresses(trip);
+        // An invalid trip fails for good, a temporary failure is retried
+        verify(pendingTripRepository).fail(eq(2L), anyString(), eq("No estimate for selected mode"), any());
+        verify(pendingTripRepository).retry(eq(4L), anyString(), eq("Directions unavailable"), any());
+        verify(pendingTripRepository, never()).fail(eq(4L), anyString(), anyString(), any());
+    }
+
+    @Test
+    void failsTemporaryFailuresOnTheLastAttempt() {
+        PendingTrip pending = claimed(1, "C", "D", 5);
+        when(pendingTripRepository.findReadyIds(any(), any())).thenReturn(List.of(1L));
+        when(pendingTripRepository.claim(eq(1L), anyString(), any())).thenReturn(1);
+        when(pendingTripRepository.findAllById(List.of(1L))).thenReturn(List.of(pending));
+        when(userRepository.findById(anyLong())).thenReturn(Optional.of(new User("Ada", "A", "ada", "ada@example.com", "pw", 0)));
+        when(transportService.estimateTrip(any(), any(), any(), any(), any()))
+                .thenThrow(new IllegalStateException("Directions unavailable"));
+
+        queue.processBatch();
+
+        verify(pendingTripRepository).fail(eq(1L), anyString(), eq("Directions unavailable"), any());
+        verify(pendingTripRepository, never()).retry(anyLong(), anyString(), anyString(), any());
+    }
+
+    @Test
+    void retriesTripsWhoseDirectionsTimedOut() {
+        // Walking is answered at once, driving misses the 200 ms deadline
+        DirectionsProvider directions = (origin, destination, mode) -> {
+            if (mode == TravelMode.DRIVING) {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return TripEstimateTests.route(mode, 10000, 3600);
+        };
+        TransportService estimates = new TransportService(
+                mock(UserRepository.class),
+                mock(TripRepository.class),
+                mock(VehicleRepository.class),
+                directions,
+                mock(PlacesProvider.class),
+                mock(AddressIndex.class),
+                new DirectionsCache(100, 60, 60, 60, 10),
+                mock(RouteEstimateStore.class),
+                new EmissionFactorEngine(mock(TransportationModeRepository.class)),
+                mock(LeaderboardEngine.class),
+                mock(DailyTripRollup.class),
+                mock(DataVersions.class),
+                tripService,
+                mock(UserStatisticsService.class),
+                true,
+                200,
+                5,
+                3,
+                1000,
+                8);
+        TripIngestQueue queue = new TripIngestQueue(
+                pendingTripRepository,
+                userRepository,
+                estimates,
+                tripService,
+                challengeStatusService,
+                mock(PlatformTransactionManager.class),
+                10,
+                4,
+                300000,
+                5,
+                1000);
+        PendingTrip pending = claimed(1, "A", "B", 1);
+        when(pendingTripRepository.findReadyIds(any(), any())).thenReturn(List.of(1L));
+        when(pendingTripRepository.claim(eq(1L), anyString(), any())).thenReturn(1);
+        when(pendingTripRepository.findAllById(List.of(1L))).thenReturn(List.of(pending));
+        when(userRepository.findById(anyLong())).thenReturn(Optional.of(new User("Ada", "A", "ada", "ada@example.com", "pw", 0)));
+
+        queue.processBatch();
+
+        verify(pendingTripRepository).retry(eq(1L), anyString(), eq("Directions failed for driving mode"), any());
+        verify(pendingTripRepository, never()).fail(anyLong(), anyString(), anyString(), any());
+        verify(tripService, never()).saveTrip(any());
+    }
+
+    @Test
+    void leavesTripsWithALostClaimAlone() {
+        User ada = new User("Ada", "A", "ada", "ada@example.com", "pw", 0);
+        PendingTrip pending = claimed(1, "A", "B", 1);
+        Trip trip = new Trip(ada, "A", "B", "walking", null, 5, 3600, 0.0, 1.0);
+        when(pendingTripRepository.findReadyIds(any(), any())).thenReturn(List.of(1L));
+        when(pendingTripRepository.claim(eq(1L), anyString(), any())).thenReturn(1);
+        when(pendingTripRepository.findAllById(List.of(1L))).thenReturn(List.of(pending));
+        // The lease ran out and another worker claimed the trip
+        when(pendingTripRepository.complete(anyLong(), anyString(), anyLong(), any())).thenReturn(0);
+        when(userRepository.findById(anyLong())).thenReturn(Optional.of(ada));
+        when(transportService.estimateTrip(ada, "A", "B", "walking", null)).thenReturn(trip);
+        when(tripService.saveTrip(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        queue.processBatch();
+
+        verify(pendingTripRepository, never()).fail(anyLong(), anyString(), anyString(), any());
+        verify(pendingTripRepository, never()).retry(anyLong(), anyString(), anyString(), any());
+        verify(transportService, never()).recordAddresses(any());
+    }
+
+    @Test
+    void validatesBeforeQueueing() {
+        when(userRepository.existsById(1L)).thenReturn(true);
+
+        assertThrows(IllegalArgumentException.class, () -> queue.submit(1, "A", " ", "walking", null));
+        assertThrows(NoSuchElementException.class, () -> queue.submit(2, "A", "B", "walking", null));
+        verify(pendingTripRepository, never()).save(any());
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.demo;
+
+import com.example.demo.model.Trip;
+import com.example.demo.model.User;
+import com.example.demo.repository.TripRepository;
+import com.example.demo.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.List;
+import org.hibernate.Session;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Bulk trip insert throughput, with one statement per row (as with identity
+ * ids) and with JDBC batching. Run with ./gradlew test -Dbenchmark=true
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:testdb-benchmark",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=password",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+})
+class TripInsertBenchmarkTests {
+
+    private static final int ROWS = 20000;
+    private static final int FLUSH_EVERY = 1000;
+
+    @Autowired
+    private TripRepository tripRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private double rowsPerSecond(User user, int batchSize) {
+        long start = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> {
+            entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+            List<Trip> chunk = new ArrayList<>();
+            for (int i = 0; i < ROWS; i++) {
+                chunk.add(new Trip(user, "A", "B", "driving", null, 10, 600, 2.0, 0.5));
+                if (chunk.size() == FLUSH_EVERY) {
+                    tripRepository.saveAll(chunk);
+                    entityManager.flush();
+                    entityManager.clear();
+                    chunk.clear();
+                }
+            }
+        });
+        return ROWS / ((System.nanoTime() - start) / 1e9);
+    }
+
+    @Test
+    void compareUnbatchedAndBatchedInserts() {
+        User user = userRepository.save(new User("Ada", "A", "ada", "ada@example.com", "pw", 0));
+
+        // Warm up the connection pool, JIT and statement cache
+        rowsPerSecond(user, 50);
+        double unbatched = rowsPerSecond(user, 1);
+        double batched = rowsPerSecond(user, 50);
+
+        System.out.printf("Trip inserts: %.0f rows/s unbatched, %.0f rows/s batched%n", unbatched, batched);
+        assertEquals(3L * ROWS, tripRepository.count());
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.demo;
+
+import com.example.demo.model.Trip;
+import com.example.demo.model.User;
+import com.example.demo.repository.TripRepository;
+import com.example.demo.repository.UserRepository;
+import com.example.demo.service.TripService;
+import com.example.demo.service.TripService.TripPage;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:testdb-trip-page",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=password",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+})
+class TripPageTests {
+
+    @Autowired
+    private TripService tripService;
+
+    @Autowired
+    private TripRepository tripRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private User ada;
+
+    @BeforeEach
+    void setUp() {
+        tripRepository.deleteAll();
+        userRepository.deleteAll();
+        ada = userRepository.save(new User("Ada", "A", "ada", "ada@example.com", "pw", 0));
+        trip("1", "walking", LocalDateTime.of(2025, 3, 1, 8, 0));
+        trip("2", "driving", LocalDateTime.of(2025, 3, 1, 8, 0));
+        trip("3", "walking", LocalDateTime.of(2025, 3, 2, 8, 0));
+        trip("4", "driving", LocalDateTime.of(2025, 3, 3, 8, 0));
+        trip("5", "walking", LocalDateTime.of(2025, 3, 4, 8, 0));
+    }
+
+    private void trip(String origin, String mode, LocalDateTime createdAt) {
+        Trip trip = new Trip(ada, origin, "B", mode, null, 1, 600, 0.1, 0.0);
+        trip.setCreatedAt(createdAt);
+        tripRepository.save(trip);
+    }
+
+    private static List<String> origins(TripPage page) {
+        return page.trips().stream().map(Trip::getOrigin).toList();
+    }
+
+    @Test
+    void pagesNewestFirst() {
+        TripPage first = tripService.getTripsPage(ada.getId(), 2, null, null, null, null);
+        TripPage second = tripService.getTripsPage(ada.getId(), 2, first.nextCursor(), null, null, null);
+        TripPage third = tripService.getTripsPage(ada.getId(), 2, second.nextCursor(), null, null, null);
+
+        assertEquals(List.of("5", "4"), origins(first));
+        // Trips with the same time are ordered by id
+        assertEquals(List.of("3", "2"), origins(second));
+        assertEquals(List.of("1"), origins(third));
+        assertNull(third.nextCursor());
+    }
+
+    @Test
+    void filtersByModeAndDays() {
+        TripPage walking = tripService.getTripsPage(ada.getId(), 10, null, "walking", null, null);
+        TripPage days = tripService.getTripsPage(
+                ada.getId(), 10, null, null, LocalDate.of(2025, 3, 2), LocalDate.of(2025, 3, 3));
+
+        assertEquals(List.of("5", "3", "1"), origins(walking));
+        assertEquals(List.of("4", "3"), origins(days));
+    }
+
+    @Test
+    void rejectsBadCursors() {
+        assertThrows(IllegalArgumentException.class,
+                () -> tripService.getTripsPage(ada.getId(), 2, "not a cursor", null, null, null));
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.demo;
+
+import com.example.demo.model.Trip;
+import com.example.demo.model.User;
+import com.example.demo.repository.TripRepository;
+import com.example.demo.repository.UserRepository;
+import com.example.demo.repository.UserStatisticsRepository;
+import com.example.demo.service.TransportService.Statistics;
+import com.example.demo.service.TripService;
+import com.example.demo.service.UserStatisticsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:testdb-statistics",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=password",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+})
+class UserStatisticsTests {
+
+    @Autowired
+    private UserStatisticsService statisticsService;
+
+    @Autowired
+    private TripService tripService;
+
+    @Autowired
+    private UserStatisticsRepository statisticsRepository;
+
+    @Autowired
+    private TripRepository tripRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private User ada;
+
+    @BeforeEach
+    void setUp() {
+        tripRepository.deleteAll();
+        statisticsRepository.deleteAll();
+        userRepository.deleteAll();
+        ada = userRepository.save(new User("Ada", "A", "ada", "ada@example.com", "pw", 0));
+    }
+
+    @Test
+    void computesMissingTotalsFromTripsOnFirstRead() {
+        tripRepository.save(new Trip(ada, "A", "B", "driving", null, 10, 600, 2.0, 0.5));
+        tripRepository.save(new Trip(ada, "B", "A", "driving", null, 10, 600, 2.0, 0.5));
+        assertTrue(statisticsRepository.findById(ada.getId()).isEmpty());
+
+        Statistics statistics = statisticsService.getStatistics(ada.getId());
+
+        assertEquals(2, statistics.totalTrips());
+        assertEquals(4.0, statistics.totalEmissionsCO2eKg(), 1e-9);
+        assertEquals(2, statisticsRepository.findById(ada.getId()).orElseThrow().getTrips());
+    }
+
+    @Test
+    void tripWritesAdjustTotalsAndEvictTheCache() {
+        Trip trip = tripService.saveTrip(new Trip(ada, "A", "B", "driving", null, 10, 600, 2.0, 0.5));
+        assertEquals(1, statisticsService.getStatistics(ada.getId()).totalTrips());
+
+        tripService.saveTrip(new Trip(ada, "B", "A", "bicycling", null, 10, 1800, 0.0, 1.2));
+        Statistics statistics = statisticsService.getStatistics(ada.getId());
+        assertEquals(2, statistics.totalTrips());
+        assertEquals(1.7, statistics.totalEmissionsSavingsCO2eKg(), 1e-9);
+
+        tripService.updateTrip(trip.getId(), new Trip(ada, "A", "B", "driving", null, 30, 1800, 6.0, 1.5));
+        statistics = statisticsService.getStatistics(ada.getId());
+        assertEquals(40.0, statistics.totalDistanceKm(), 1e-9);
+        assertEquals(6.0, statistics.totalEmissionsCO2eKg(), 1e-9);
+
+        tripService.deleteUserEmissions(ada.getId());
+        assertEquals(0, statisticsService.getStatistics(ada.getId()).totalTrips());
+    }
+}